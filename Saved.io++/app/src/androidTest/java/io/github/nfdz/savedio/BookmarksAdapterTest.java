@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.github.nfdz.savedio.data.RealmUtils;
+import io.github.nfdz.savedio.model.Bookmark;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmResults;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the rows bound by the bookmarks adapter for each kind of update.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookmarksAdapterTest {
+
+    private static final String TAG = "BookmarksAdapterTest";
+    private static final int BOOKMARKS = 200;
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 1280;
+    private static final long PUBLISH_TIMEOUT_SECONDS = 10;
+
+    private Instrumentation mInstrumentation;
+    private Realm mRealm;
+    private RecyclerView mRecyclerView;
+    private CountingAdapter mAdapter;
+    private volatile CountDownLatch mPublished;
+
+    @Before
+    public void setUp() throws Exception {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        final Context context = InstrumentationRegistry.getTargetContext();
+        Realm.init(context);
+        Realm.setDefaultConfiguration(new RealmConfiguration.Builder()
+                .name("bookmarks-adapter-test.realm")
+                .inMemory()
+                .build());
+        mPublished = new CountDownLatch(1);
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRealm = Realm.getDefaultInstance();
+                List<Bookmark> bookmarks = new ArrayList<>(BOOKMARKS);
+                for (int i = 0; i < BOOKMARKS; i++) {
+                    bookmarks.add(bookmark(String.format(Locale.US, "bm%03d", i)));
+                }
+                RealmUtils.addBookmarks(mRealm, bookmarks);
+
+                mAdapter = new CountingAdapter(context);
+                mAdapter.setOnDataPublishedCallback(new Callbacks.FinishCallback<Integer>() {
+                    @Override
+                    public void onFinish(Integer result) {
+                        mPublished.countDown();
+                    }
+                });
+                mRecyclerView = new RecyclerView(context);
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(context));
+                mRecyclerView.setAdapter(mAdapter);
+                BookmarksAdapter.BookmarksQuery query = new SortedByIdQuery();
+                mAdapter.swapData(query.run(mRealm), query);
+            }
+        });
+        awaitPublishAndLayout();
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.release();
+                // in memory realm is discarded when its last instance is closed
+                mRealm.close();
+            }
+        });
+    }
+
+    @Test
+    public void bindsOnlyChangedRows() throws Exception {
+        final int visibleRows = mRecyclerView.getChildCount();
+        assertTrue(visibleRows > 1);
+
+        // full refresh binds every visible row again
+        mAdapter.mBinds = 0;
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.notifyDataSetChanged();
+                layout();
+            }
+        });
+        int fullRefreshBinds = mAdapter.mBinds;
+
+        int favoriteBinds = countBindsOf(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                findBookmark(realm, "bm002").setFavorite(true);
+            }
+        });
+        int offscreenBinds = countBindsOf(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                findBookmark(realm, String.format(Locale.US, "bm%03d", BOOKMARKS - 1)).setTitle("Edited");
+            }
+        });
+        int insertionBinds = countBindsOf(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                // it is sorted between the first and the second one
+                realm.copyToRealm(bookmark("bm0005"));
+            }
+        });
+        int removalBinds = countBindsOf(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                findBookmark(realm, "bm003").deleteFromRealm();
+            }
+        });
+
+        Log.i(TAG, String.format("%d visible rows, binds per update: full refresh %d, favorite %d, " +
+                        "offscreen edit %d, insertion %d, removal %d",
+                visibleRows,
+                fullRefreshBinds,
+                favoriteBinds,
+                offscreenBinds,
+                insertionBinds,
+                removalBinds));
+        assertEquals(visibleRows, fullRefreshBinds);
+        assertEquals(1, favoriteBinds);
+        assertEquals(0, offscreenBinds);
+        assertTrue(insertionBinds <= 2);
+        // row that appears at the bottom
+        assertTrue(removalBinds <= 1);
+    }
+
+    /**
+     * Performs given transaction in main thread and waits until the adapter publishes and lays out
+     * the changes.
+     * @param transaction
+     * @return number of rows bound.
+     */
+    private int countBindsOf(final Realm.Transaction transaction) throws InterruptedException {
+        mPublished = new CountDownLatch(1);
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.mBinds = 0;
+                mRealm.executeTransaction(transaction);
+            }
+        });
+        awaitPublishAndLayout();
+        return mAdapter.mBinds;
+    }
+
+    private void awaitPublishAndLayout() throws InterruptedException {
+        assertTrue(mPublished.await(PUBLISH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                layout();
+            }
+        });
+    }
+
+    private void layout() {
+        mRecyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private static Bookmark findBookmark(Realm realm, String id) {
+        return realm.where(Bookmark.class).equalTo(Bookmark.FIELD_ID, id).findFirst();
+    }
+
+    private static Bookmark bookmark(String id) {
+        Bookmark bookmark = new Bookmark();
+        bookmark.setId(id);
+        bookmark.setTitle("Title " + id);
+        bookmark.setUrl("http://localhost/" + id);
+        bookmark.setDate("2017-03-01 10:00:00");
+        return bookmark;
+    }
+
+    private static class SortedByIdQuery implements BookmarksAdapter.BookmarksQuery {
+        @Override
+        public RealmResults<Bookmark> run(Realm realm) {
+            return realm.where(Bookmark.class).findAllSorted(Bookmark.FIELD_ID);
+        }
+    }
+
+    private static class CountingAdapter extends BookmarksAdapter {
+
+        private int mBinds;
+
+        CountingAdapter(Context context) {
+            super(context, null);
+        }
+
+        @Override
+        public void onBindViewHolder(BookmarksViewHolder holder, int position) {
+            mBinds++;
+            super.onBindViewHolder(holder, position);
+        }
+    }
+}
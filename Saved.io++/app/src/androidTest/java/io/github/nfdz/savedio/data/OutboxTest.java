@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.PendingOperation;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class OutboxTest {
+
+    private static final String SERVER_ID = "123456";
+    private static final String DATE = "2017-03-02 13:08:41";
+
+    private Realm mRealm;
+
+    @Before
+    public void setUp() {
+        Realm.init(InstrumentationRegistry.getTargetContext());
+        mRealm = Realm.getInstance(new RealmConfiguration.Builder()
+                .name("outbox-test.realm")
+                .inMemory()
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        // in memory realm is discarded when its last instance is closed
+        mRealm.close();
+    }
+
+    @Test
+    public void deleteOfUnsentCreationCancelsBoth() {
+        Bookmark bookmark = bookmark(Outbox.newLocalId());
+        mRealm.beginTransaction();
+        Outbox.enqueueCreate(mRealm, bookmark);
+        Outbox.enqueueDelete(mRealm, bookmark);
+        mRealm.commitTransaction();
+
+        assertTrue(Outbox.isEmpty(mRealm));
+    }
+
+    @Test
+    public void deleteAfterDateRetrievalFailureDeletesServerBookmark() {
+        String localId = Outbox.newLocalId();
+        Bookmark bookmark = bookmark(localId);
+        mRealm.beginTransaction();
+        Outbox.enqueueCreate(mRealm, bookmark);
+        mRealm.commitTransaction();
+
+        // drainer sent the creation and stored the server ID, but date retrieval failed
+        mRealm.beginTransaction();
+        PendingOperation creation = find(localId);
+        creation.setServerId(SERVER_ID);
+        creation.setAttempts(creation.getAttempts() + 1);
+        mRealm.commitTransaction();
+
+        // bookmark is removed locally before next drain
+        mRealm.beginTransaction();
+        Outbox.enqueueDelete(mRealm, bookmark);
+        mRealm.commitTransaction();
+
+        assertNull(find(localId));
+        PendingOperation deletion = find(SERVER_ID);
+        assertNotNull(deletion);
+        assertEquals(PendingOperation.TYPE_DELETE, deletion.getType());
+        assertEquals(bookmark.getUrl(), deletion.getUrl());
+        assertEquals(bookmark.getTitle(), deletion.getTitle());
+        assertEquals(1, mRealm.where(PendingOperation.class).count());
+    }
+
+    @Test
+    public void undoAfterDateRetrievalFailureKeepsServerBookmark() {
+        String localId = Outbox.newLocalId();
+        Bookmark bookmark = bookmark(localId);
+        mRealm.beginTransaction();
+        Outbox.enqueueCreate(mRealm, bookmark);
+        find(localId).setServerId(SERVER_ID);
+        Outbox.enqueueDelete(mRealm, bookmark);
+        mRealm.commitTransaction();
+
+        // bookmark is created again with the same fields (undo)
+        Bookmark restored = bookmark(Outbox.newLocalId());
+        mRealm.beginTransaction();
+        boolean cancelled = Outbox.cancelDelete(mRealm, restored);
+        mRealm.commitTransaction();
+
+        assertTrue(cancelled);
+        assertEquals(SERVER_ID, restored.getId());
+        assertTrue(Outbox.isEmpty(mRealm));
+    }
+
+    @Test
+    public void deleteOfPendingDeletionIsIgnored() {
+        Bookmark bookmark = bookmark(SERVER_ID);
+        mRealm.beginTransaction();
+        Outbox.enqueueDelete(mRealm, bookmark);
+        Outbox.enqueueDelete(mRealm, bookmark);
+        mRealm.commitTransaction();
+
+        assertEquals(1, mRealm.where(PendingOperation.class).count());
+        assertFalse(Outbox.isEmpty(mRealm));
+    }
+
+    @Test
+    public void pendingBookmarksKeepServerIdOfFailedImport() {
+        Bookmark unsent = bookmark(Outbox.newLocalId());
+        Bookmark sent = bookmark(Outbox.newLocalId());
+        RealmUtils.addPendingBookmarks(mRealm,
+                Arrays.asList(unsent, sent),
+                Arrays.asList(null, SERVER_ID));
+
+        assertEquals(2, mRealm.where(Bookmark.class).count());
+        assertEquals(PendingOperation.TYPE_CREATE, find(unsent.getId()).getType());
+        assertNull(find(unsent.getId()).getServerId());
+        // only its date has to be retrieved, so it is not created twice in server
+        assertEquals(SERVER_ID, find(sent.getId()).getServerId());
+    }
+
+    private PendingOperation find(String bookmarkId) {
+        return mRealm.where(PendingOperation.class)
+                .equalTo(PendingOperation.FIELD_BOOKMARK_ID, bookmarkId)
+                .findFirst();
+    }
+
+    private static Bookmark bookmark(String id) {
+        Bookmark bookmark = new Bookmark();
+        bookmark.setId(id);
+        bookmark.setUrl("https://example.com");
+        bookmark.setTitle("Example");
+        bookmark.setListName("");
+        bookmark.setDate(DATE);
+        return bookmark;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.nfdz.savedio.model.Bookmark;
+import io.realm.DynamicRealm;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmObjectSchema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compares latency of hot queries with and without the field indexes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryIndexTest {
+
+    private static final String TAG = "QueryIndexTest";
+    private static final String BOOKMARK_CLASS = "Bookmark";
+    private static final int BOOKMARKS = 50000;
+    private static final int FAVORITE_EACH = 100;
+    private static final int LISTS = 500;
+    private static final int ROUNDS = 20;
+
+    private RealmConfiguration mConfiguration;
+    private Realm mRealm;
+    private DynamicRealm mDynamicRealm;
+
+    @Before
+    public void setUp() {
+        Realm.init(InstrumentationRegistry.getTargetContext());
+        mConfiguration = new RealmConfiguration.Builder()
+                .name("query-index-test.realm")
+                .inMemory()
+                .build();
+        mRealm = Realm.getInstance(mConfiguration);
+        List<Bookmark> bookmarks = new ArrayList<>(BOOKMARKS);
+        for (int i = 0; i < BOOKMARKS; i++) {
+            Bookmark bookmark = new Bookmark();
+            bookmark.setId("bm" + i);
+            bookmark.setTitle("Title " + i);
+            bookmark.setUrl("http://example.com/" + i);
+            bookmark.setListName("List " + (i % LISTS));
+            bookmark.setDate("2017-03-01 10:00:00");
+            bookmark.setFavorite(i % FAVORITE_EACH == 0);
+            bookmarks.add(bookmark);
+        }
+        RealmUtils.addBookmarks(mRealm, bookmarks);
+        mDynamicRealm = DynamicRealm.getInstance(mConfiguration);
+    }
+
+    @After
+    public void tearDown() {
+        // in memory realm is discarded when its last instance is closed
+        mDynamicRealm.close();
+        mRealm.close();
+    }
+
+    @Test
+    public void indexedQueriesComparedToUnindexed() {
+        long indexedFavorites = timeFavoritesQuery();
+        long indexedList = timeListQuery();
+
+        mDynamicRealm.beginTransaction();
+        RealmObjectSchema schema = mDynamicRealm.getSchema().get(BOOKMARK_CLASS);
+        schema.removeIndex(Bookmark.FIELD_FAVORITE);
+        schema.removeIndex(Bookmark.FIELD_LIST);
+        mDynamicRealm.commitTransaction();
+        assertFalse(schema.hasIndex(Bookmark.FIELD_FAVORITE));
+        assertFalse(schema.hasIndex(Bookmark.FIELD_LIST));
+
+        long unindexedFavorites = timeFavoritesQuery();
+        long unindexedList = timeListQuery();
+        Log.i(TAG, String.format("%d bookmarks, favorites query: indexed %d us, unindexed %d us",
+                BOOKMARKS,
+                indexedFavorites,
+                unindexedFavorites));
+        Log.i(TAG, String.format("%d bookmarks, list query: indexed %d us, unindexed %d us",
+                BOOKMARKS,
+                indexedList,
+                unindexedList));
+    }
+
+    /**
+     * @return average latency in microseconds.
+     */
+    private long timeFavoritesQuery() {
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            long count = mDynamicRealm.where(BOOKMARK_CLASS)
+                    .equalTo(Bookmark.FIELD_FAVORITE, true)
+                    .findAll()
+                    .size();
+            assertEquals(BOOKMARKS / FAVORITE_EACH, count);
+        }
+        return (System.nanoTime() - start) / 1000 / ROUNDS;
+    }
+
+    /**
+     * @return average latency in microseconds.
+     */
+    private long timeListQuery() {
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            long count = mDynamicRealm.where(BOOKMARK_CLASS)
+                    .equalTo(Bookmark.FIELD_LIST, "List " + (i % LISTS))
+                    .findAll()
+                    .size();
+            assertEquals(BOOKMARKS / LISTS, count);
+        }
+        return (System.nanoTime() - start) / 1000 / ROUNDS;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.SearchTerm;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SearchIndexTest {
+
+    private Realm mRealm;
+
+    @Before
+    public void setUp() {
+        Realm.init(InstrumentationRegistry.getTargetContext());
+        mRealm = Realm.getInstance(new RealmConfiguration.Builder()
+                .name("search-index-test.realm")
+                .inMemory()
+                .build());
+        RealmUtils.addBookmarks(mRealm, Arrays.asList(
+                bookmark("a", "Android developers", "https://www.example.com/index.html"),
+                bookmark("b", "Kotlin reference", "https://example.com/kotlin")));
+    }
+
+    @After
+    public void tearDown() {
+        // in memory realm is discarded when its last instance is closed
+        mRealm.close();
+    }
+
+    @Test
+    public void commonURLTokensAreNotIndexed() {
+        Set<String> terms = SearchIndex.tokenize("Comics www", "https://www.example.com/index.html", "", "");
+        assertEquals(new HashSet<>(Arrays.asList("comics", "www", "example")), terms);
+        assertNull(findTerm("com"));
+        assertNull(findTerm("index"));
+        assertEquals(2, findTerm("example").getBookmarks().size());
+    }
+
+    @Test
+    public void bookmarksStoreTheirTerms() {
+        Bookmark bookmark = find("b");
+        assertEquals(SearchIndex.tokenize(bookmark.getTitle(), bookmark.getUrl(), null, null),
+                new HashSet<>(Arrays.asList(bookmark.getSearchTerms().split(" "))));
+    }
+
+    @Test
+    public void reindexOnlyUpdatesChangedTerms() {
+        mRealm.beginTransaction();
+        Bookmark bookmark = find("b");
+        bookmark.setDate("2017-03-05 10:00:00");
+        boolean changed = SearchIndex.reindex(mRealm, bookmark, null);
+        mRealm.commitTransaction();
+        assertFalse(changed);
+
+        mRealm.beginTransaction();
+        bookmark.setTitle("Kotlin guide");
+        changed = SearchIndex.reindex(mRealm, bookmark, null);
+        mRealm.commitTransaction();
+        assertTrue(changed);
+
+        assertNull(findTerm("reference"));
+        assertEquals(1, findTerm("guide").getBookmarks().size());
+        assertEquals(2, findTerm("example").getBookmarks().size());
+        assertEquals(Collections.singleton("b"), SearchIndex.search(mRealm, "kotlin gui"));
+    }
+
+    @Test
+    public void deleteRemovesEmptyTerms() {
+        mRealm.beginTransaction();
+        SearchIndex.delete(mRealm, find("b"));
+        mRealm.commitTransaction();
+
+        assertNull(findTerm("kotlin"));
+        assertNull(findTerm("reference"));
+        assertEquals(1, findTerm("example").getBookmarks().size());
+        assertEquals(Collections.singleton("a"), SearchIndex.search(mRealm, "exam"));
+    }
+
+    private Bookmark find(String id) {
+        return mRealm.where(Bookmark.class).equalTo(Bookmark.FIELD_ID, id).findFirst();
+    }
+
+    private SearchTerm findTerm(String term) {
+        return mRealm.where(SearchTerm.class).equalTo(SearchTerm.FIELD_TERM, term).findFirst();
+    }
+
+    private static Bookmark bookmark(String id, String title, String url) {
+        Bookmark bookmark = new Bookmark();
+        bookmark.setId(id);
+        bookmark.setTitle(title);
+        bookmark.setUrl(url);
+        bookmark.setDate("2017-03-01 10:00:00");
+        return bookmark;
+    }
+}
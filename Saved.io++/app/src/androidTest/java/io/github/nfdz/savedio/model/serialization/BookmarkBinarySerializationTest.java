@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.nfdz.savedio.R;
+import io.github.nfdz.savedio.model.Bookmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class BookmarkBinarySerializationTest {
+
+    private static final String TAG = "BinarySerializationTest";
+    private static final int COMPARISON_BOOKMARKS = 20000;
+
+    @Test
+    public void roundTripWithoutCompression() throws Exception {
+        List<Bookmark> bookmarks = sampleBookmarks();
+        byte[] data = write(bookmarks, BookmarkSerializer.FORMAT_BINARY);
+        assertTrue(BookmarkBinaryFormat.isMagic(data));
+        assertEquals(BookmarkBinaryFormat.COMPRESSION_NONE, data[BookmarkBinaryFormat.MAGIC.length + 1]);
+        assertBookmarksEqual(bookmarks, read(data));
+    }
+
+    @Test
+    public void roundTripWithGzip() throws Exception {
+        List<Bookmark> bookmarks = sampleBookmarks();
+        byte[] data = write(bookmarks, BookmarkSerializer.FORMAT_BINARY_GZIP);
+        assertTrue(BookmarkBinaryFormat.isMagic(data));
+        assertEquals(BookmarkBinaryFormat.COMPRESSION_GZIP, data[BookmarkBinaryFormat.MAGIC.length + 1]);
+        assertBookmarksEqual(bookmarks, read(data));
+    }
+
+    @Test
+    public void roundTripOfManyBookmarks() throws Exception {
+        // bigger than any internal buffer of reader and writer
+        List<Bookmark> bookmarks = manyBookmarks(5000);
+        assertBookmarksEqual(bookmarks, read(write(bookmarks, BookmarkSerializer.FORMAT_BINARY)));
+        assertBookmarksEqual(bookmarks, read(write(bookmarks, BookmarkSerializer.FORMAT_BINARY_GZIP)));
+    }
+
+    @Test
+    public void listNamesAreWrittenOnce() throws Exception {
+        List<Bookmark> bookmarks = Arrays.asList(
+                bookmark("http://example.com/1", "Title 1", "Android", null, null, 0, false),
+                bookmark("http://example.com/2", "Title 2", "Kotlin", null, null, 0, false),
+                bookmark("http://example.com/3", "Title 3", "Android", null, null, 0, false),
+                bookmark("http://example.com/4", "Title 4", "", null, null, 0, false),
+                bookmark("http://example.com/5", "Title 5", "Kotlin", null, null, 0, false));
+        byte[] data = write(bookmarks, BookmarkSerializer.FORMAT_BINARY);
+        String content = new String(data, "UTF-8");
+        assertEquals(1, occurrences(content, "Android"));
+        assertEquals(1, occurrences(content, "Kotlin"));
+        assertBookmarksEqual(bookmarks, read(data));
+    }
+
+    @Test
+    public void nullStringsAreKept() throws Exception {
+        Bookmark bm = bookmark("http://example.com", null, null, null, null, 0, false);
+        List<Bookmark> result = read(write(Arrays.asList(bm), BookmarkSerializer.FORMAT_BINARY));
+        assertEquals(1, result.size());
+        assertEquals("http://example.com", result.get(0).getUrl());
+        assertNull(result.get(0).getTitle());
+        assertNull(result.get(0).getNotes());
+        assertNull(result.get(0).getDate());
+        // no list is read as empty list name
+        assertEquals("", result.get(0).getListName());
+    }
+
+    @Test
+    public void dateClickCounterAndFavoriteArePreserved() throws Exception {
+        Bookmark bm = bookmark("http://example.com", "Title", "List", "Notes",
+                "2017-03-02 13:08:41", 300, true);
+        Bookmark result = read(write(Arrays.asList(bm), BookmarkSerializer.FORMAT_BINARY_GZIP)).get(0);
+        assertEquals("2017-03-02 13:08:41", result.getDate());
+        assertEquals(300, result.getClickCounter());
+        assertTrue(result.isFavorite());
+    }
+
+    @Test
+    public void badMagicIsRejected() throws Exception {
+        byte[] data = write(sampleBookmarks(), BookmarkSerializer.FORMAT_BINARY);
+        data[0] = 'X';
+        assertRejected(data, R.string.deserialize_binary_error);
+    }
+
+    @Test
+    public void unsupportedVersionIsRejected() throws Exception {
+        byte[] data = write(sampleBookmarks(), BookmarkSerializer.FORMAT_BINARY);
+        data[BookmarkBinaryFormat.MAGIC.length] = BookmarkBinaryFormat.VERSION + 1;
+        assertRejected(data, R.string.deserialize_version_error);
+    }
+
+    @Test
+    public void unsupportedCompressionIsRejected() throws Exception {
+        byte[] data = write(sampleBookmarks(), BookmarkSerializer.FORMAT_BINARY);
+        data[BookmarkBinaryFormat.MAGIC.length + 1] = 7;
+        assertRejected(data, R.string.deserialize_version_error);
+    }
+
+    @Test
+    public void truncatedStreamIsRejected() throws Exception {
+        byte[] data = write(sampleBookmarks(), BookmarkSerializer.FORMAT_BINARY);
+        byte[] truncated = Arrays.copyOf(data, data.length - 10);
+        try {
+            read(truncated);
+            fail("Truncated stream was read");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void varIntOverflowIsRejected() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BookmarkBinaryFormat.MAGIC);
+        out.write(BookmarkBinaryFormat.VERSION);
+        out.write(BookmarkBinaryFormat.COMPRESSION_NONE);
+        out.write(BookmarkBinaryFormat.TAG_BOOKMARK);
+        // URL length with more than five bytes
+        for (int i = 0; i < 6; i++) {
+            out.write(0xFF);
+        }
+        assertRejected(out.toByteArray(), R.string.deserialize_binary_error);
+    }
+
+    @Test
+    public void sizeAndSpeedComparedToJson() throws Exception {
+        List<Bookmark> bookmarks = manyBookmarks(COMPARISON_BOOKMARKS);
+        String[] formats = { BookmarkSerializer.FORMAT_JSON,
+                BookmarkSerializer.FORMAT_BINARY,
+                BookmarkSerializer.FORMAT_BINARY_GZIP };
+        int[] sizes = new int[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            // first round warms up code paths
+            read(write(bookmarks, formats[i]));
+            long start = System.nanoTime();
+            byte[] data = write(bookmarks, formats[i]);
+            long written = System.nanoTime();
+            assertEquals(bookmarks.size(), read(data).size());
+            long finish = System.nanoTime();
+            sizes[i] = data.length;
+            Log.i(TAG, String.format("%s: %d bookmarks, %d bytes, write %d ms, read %d ms",
+                    formats[i],
+                    bookmarks.size(),
+                    data.length,
+                    (written - start) / 1000000,
+                    (finish - written) / 1000000));
+        }
+        // binary keeps more fields than JSON and it is still smaller
+        assertTrue(sizes[1] < sizes[0]);
+        assertTrue(sizes[2] < sizes[1]);
+    }
+
+    private static void assertRejected(byte[] data, int messageId) throws IOException {
+        try {
+            // serializer would read content without magic bytes as JSON
+            new BookmarkBinaryReader(new ByteArrayInputStream(data)).read();
+            fail("Invalid content was read");
+        } catch (SerializationException e) {
+            assertEquals(messageId, e.getMessageId());
+        }
+    }
+
+    private static int occurrences(String content, String value) {
+        int count = 0;
+        int index = content.indexOf(value);
+        while (index >= 0) {
+            count++;
+            index = content.indexOf(value, index + value.length());
+        }
+        return count;
+    }
+
+    private static List<Bookmark> sampleBookmarks() {
+        return Arrays.asList(
+                bookmark("http://saved.io", "Saved.io", "", "", "2017-03-01 10:00:00", 0, false),
+                bookmark("https://example.com/?q=a&b=c", "\u00d1and\u00fa \u6f22\u5b57", "Lista",
+                        "line 1\nline 2", "2017-03-02 13:08:41", 12, true),
+                bookmark("http://example.com", "", "Lista", null, "2017-03-03 09:00:00", 200, false));
+    }
+
+    private static List<Bookmark> manyBookmarks(int count) {
+        List<Bookmark> bookmarks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            bookmarks.add(bookmark("http://example.com/" + i,
+                    "Title " + i,
+                    "List " + (i % 7),
+                    "Note " + i,
+                    "2017-03-01 10:00:00",
+                    i % 50,
+                    i % 3 == 0));
+        }
+        return bookmarks;
+    }
+
+    private static Bookmark bookmark(String url,
+                                     String title,
+                                     String list,
+                                     String notes,
+                                     String date,
+                                     int clickCounter,
+                                     boolean favorite) {
+        Bookmark bm = new Bookmark();
+        bm.setUrl(url);
+        bm.setTitle(title);
+        bm.setListName(list);
+        bm.setNotes(notes);
+        bm.setDate(date);
+        bm.setClickCounter(clickCounter);
+        bm.setFavorite(favorite);
+        return bm;
+    }
+
+    private static byte[] write(List<Bookmark> bookmarks, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookmarkWriter writer = BookmarkSerializer.newWriter(out, format);
+        try {
+            for (Bookmark bm : bookmarks) {
+                writer.write(bm);
+            }
+        } finally {
+            writer.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Bookmark> read(byte[] data) throws IOException, SerializationException {
+        BookmarkReader reader = BookmarkSerializer.newReader(new ByteArrayInputStream(data));
+        try {
+            List<Bookmark> bookmarks = new ArrayList<>();
+            Bookmark bm;
+            while ((bm = reader.read()) != null) {
+                bookmarks.add(bm);
+            }
+            // it keeps returning null at the end
+            assertNull(reader.read());
+            return bookmarks;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void assertBookmarksEqual(List<Bookmark> expected, List<Bookmark> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Bookmark bm = expected.get(i);
+            String list = bm.getListName() == null ? "" : bm.getListName();
+            assertEquals(bm.getUrl(), actual.get(i).getUrl());
+            assertEquals(bm.getTitle(), actual.get(i).getTitle());
+            assertEquals(list, actual.get(i).getListName());
+            assertEquals(bm.getNotes(), actual.get(i).getNotes());
+            assertEquals(bm.getDate(), actual.get(i).getDate());
+            assertEquals(bm.getClickCounter(), actual.get(i).getClickCounter());
+            assertEquals(bm.isFavorite(), actual.get(i).isFavorite());
+        }
+    }
+}
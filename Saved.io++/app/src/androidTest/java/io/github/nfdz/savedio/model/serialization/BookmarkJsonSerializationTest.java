@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.nfdz.savedio.R;
+import io.github.nfdz.savedio.model.Bookmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class BookmarkJsonSerializationTest {
+
+    private static final String TAG = "JsonSerializationTest";
+    private static final String CHARSET = "UTF-8";
+    private static final int BENCHMARK_BOOKMARKS = 100000;
+
+    @Test
+    public void roundTrip() throws Exception {
+        List<Bookmark> bookmarks = Arrays.asList(
+                bookmark("Saved.io", "http://saved.io", "", ""),
+                bookmark("\u00d1and\u00fa \"quoted\" \\ \u6f22\u5b57", "https://example.com/?q=a&b=c", "Lista", "line 1\nline 2"),
+                bookmark("", "http://example.com", "", ""));
+        byte[] data = write(bookmarks);
+        assertBookmarksEqual(bookmarks, read(data));
+    }
+
+    @Test
+    public void roundTripOfManyBookmarks() throws Exception {
+        // bigger than any internal buffer of reader and writer
+        List<Bookmark> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            bookmarks.add(bookmark("Title " + i, "http://example.com/" + i, "List " + (i % 7), "Note " + i));
+        }
+        assertBookmarksEqual(bookmarks, read(write(bookmarks)));
+    }
+
+    @Test
+    public void nullFieldsAreReadAsEmpty() throws Exception {
+        Bookmark bm = bookmark(null, "http://example.com", null, null);
+        List<Bookmark> result = read(write(Arrays.asList(bm)));
+        assertEquals(1, result.size());
+        assertEquals("", result.get(0).getTitle());
+        assertEquals("", result.get(0).getListName());
+        assertEquals("", result.get(0).getNotes());
+        assertEquals("http://example.com", result.get(0).getUrl());
+    }
+
+    @Test
+    public void readsLegacyFormat() throws Exception {
+        // older versions stored every object as a string inside the array
+        List<Bookmark> bookmarks = Arrays.asList(
+                bookmark("Title 1", "http://example.com/1", "List", "Note"),
+                bookmark("Title 2", "http://example.com/2", "", ""));
+        StringBuilder json = new StringBuilder("[");
+        for (Bookmark bm : bookmarks) {
+            if (json.length() > 1) json.append(',');
+            json.append(org.json.JSONObject.quote(BookmarkSerializer.serialize(bm)));
+        }
+        json.append(']');
+        assertBookmarksEqual(bookmarks, read(json.toString().getBytes(CHARSET)));
+    }
+
+    @Test
+    public void emptyArray() throws Exception {
+        assertEquals(0, read(write(new ArrayList<Bookmark>())).size());
+    }
+
+    @Test
+    public void missingURLIsRejected() throws Exception {
+        String json = "[{\"" + Bookmark.FIELD_TITLE + "\":\"No URL\"}]";
+        try {
+            read(json.getBytes(CHARSET));
+            fail("Bookmark without URL was read");
+        } catch (SerializationException e) {
+            assertEquals(R.string.deserialize_json_error, e.getMessageId());
+        }
+    }
+
+    @Test
+    public void malformedContentIsRejected() throws Exception {
+        String json = "{\"" + Bookmark.FIELD_URL + "\":\"http://example.com\"}";
+        try {
+            read(json.getBytes(CHARSET));
+            fail("Object was read as an array");
+        } catch (SerializationException e) {
+            assertEquals(R.string.deserialize_json_array_error, e.getMessageId());
+        }
+    }
+
+    @Test
+    public void streamingComparedToLegacyFormat() throws Exception {
+        List<Bookmark> bookmarks = new ArrayList<>(BENCHMARK_BOOKMARKS);
+        for (int i = 0; i < BENCHMARK_BOOKMARKS; i++) {
+            bookmarks.add(bookmark("Title " + i, "http://example.com/" + i, "List " + (i % 7), "Note " + i));
+        }
+
+        long start = System.nanoTime();
+        byte[] streamed = write(bookmarks);
+        long written = System.nanoTime();
+        assertEquals(bookmarks.size(), read(streamed).size());
+        long finish = System.nanoTime();
+        Log.i(TAG, String.format("streaming: %d bookmarks, %d bytes, write %d ms, read %d ms",
+                bookmarks.size(),
+                streamed.length,
+                (written - start) / 1000000,
+                (finish - written) / 1000000));
+
+        // whole array in memory, every object serialized and escaped twice
+        start = System.nanoTime();
+        byte[] legacy = writeLegacy(bookmarks);
+        written = System.nanoTime();
+        assertEquals(bookmarks.size(), readLegacy(legacy).size());
+        finish = System.nanoTime();
+        Log.i(TAG, String.format("legacy: %d bookmarks, %d bytes, write %d ms, read %d ms",
+                bookmarks.size(),
+                legacy.length,
+                (written - start) / 1000000,
+                (finish - written) / 1000000));
+
+        assertTrue(streamed.length < legacy.length);
+    }
+
+    private static byte[] writeLegacy(List<Bookmark> bookmarks) throws Exception {
+        JSONArray array = new JSONArray();
+        for (Bookmark bm : bookmarks) {
+            array.put(BookmarkSerializer.serialize(bm));
+        }
+        return array.toString().getBytes(CHARSET);
+    }
+
+    private static List<Bookmark> readLegacy(byte[] data) throws Exception {
+        JSONArray array = new JSONArray(new String(data, CHARSET));
+        List<Bookmark> bookmarks = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            bookmarks.add(BookmarkSerializer.deserializeBookmark(array.getString(i)));
+        }
+        return bookmarks;
+    }
+
+    private static Bookmark bookmark(String title, String url, String list, String notes) {
+        Bookmark bm = new Bookmark();
+        bm.setTitle(title);
+        bm.setUrl(url);
+        bm.setListName(list);
+        bm.setNotes(notes);
+        return bm;
+    }
+
+    private static byte[] write(List<Bookmark> bookmarks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookmarkWriter writer = BookmarkSerializer.newWriter(out, BookmarkSerializer.FORMAT_JSON);
+        try {
+            for (Bookmark bm : bookmarks) {
+                writer.write(bm);
+            }
+        } finally {
+            writer.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Bookmark> read(byte[] data) throws IOException, SerializationException {
+        BookmarkReader reader = BookmarkSerializer.newReader(new ByteArrayInputStream(data));
+        try {
+            List<Bookmark> bookmarks = new ArrayList<>();
+            Bookmark bm;
+            while ((bm = reader.read()) != null) {
+                bookmarks.add(bm);
+            }
+            // it keeps returning null at the end
+            assertNull(reader.read());
+            return bookmarks;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void assertBookmarksEqual(List<Bookmark> expected, List<Bookmark> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getUrl(), actual.get(i).getUrl());
+            assertEquals(expected.get(i).getListName(), actual.get(i).getListName());
+            assertEquals(expected.get(i).getNotes(), actual.get(i).getNotes());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.github.nfdz.savedio.data.Outbox;
+import io.github.nfdz.savedio.data.RealmUtils;
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.sync.api.BookmarkAPI;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SyncDiffTest {
+
+    private static final String TAG = "SyncDiffTest";
+    private static final Set<String> NO_PENDING = Collections.emptySet();
+    private static final int BENCHMARK_BOOKMARKS = 50000;
+    private static final int BENCHMARK_PAGE = 50;
+
+    private Realm mRealm;
+
+    @Before
+    public void setUp() {
+        Realm.init(InstrumentationRegistry.getTargetContext());
+        mRealm = Realm.getInstance(new RealmConfiguration.Builder()
+                .name("sync-diff-test.realm")
+                .inMemory()
+                .build());
+        // same state for every test: a is unchanged, b is modified in server and c is removed
+        RealmUtils.addBookmarks(mRealm, Arrays.asList(
+                local("a", "Title A", "2017-03-01 10:00:00"),
+                local("b", "Title B", "2017-03-02 10:00:00"),
+                local("c", "Title C", "2017-03-03 10:00:00")));
+    }
+
+    @After
+    public void tearDown() {
+        // in memory realm is discarded when its last instance is closed
+        mRealm.close();
+    }
+
+    @Test
+    public void fullReconciliationCreatesUpdatesAndRemoves() {
+        SyncDiff diff = new SyncDiff(mRealm, false, NO_PENDING);
+        diff.addRemote(Arrays.asList(
+                remote("a", "Title A", "2017-03-01 10:00:00"),
+                remote("b", "Title B modified", "2017-03-02 10:00:00"),
+                remote("d", "Title D", "2017-03-04 10:00:00")));
+        apply(diff);
+
+        assertEquals(1, diff.getCreatedCount());
+        assertEquals(1, diff.getUpdatedCount());
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(Arrays.asList("a", "b", "d"), storedIds());
+        assertEquals("Title B modified", find("b").getTitle());
+        assertFalse(diff.isChanged("a"));
+        assertTrue(diff.isChanged("b"));
+        assertTrue(diff.isChanged("d"));
+        assertEquals("2017-03-04 10:00:00", diff.getNewestDate());
+        assertEquals("d", diff.getNewestId());
+    }
+
+    @Test
+    public void checksumsMatchStoredIds() {
+        SyncDiff diff = new SyncDiff(mRealm, false, NO_PENDING);
+        assertEquals(checksum(storedIds()), diff.getLocalChecksum());
+        diff.addRemote(Arrays.asList(
+                remote("a", "Title A", "2017-03-01 10:00:00"),
+                remote("d", "Title D", "2017-03-04 10:00:00")));
+        apply(diff);
+        assertEquals(checksum(storedIds()), diff.getResultChecksum());
+    }
+
+    @Test
+    public void incrementalModeDoesNotRemove() {
+        SyncDiff diff = new SyncDiff(mRealm, false, NO_PENDING);
+        diff.setFullReconciliation(false);
+        diff.addRemote(Collections.singletonList(remote("d", "Title D", "2017-03-04 10:00:00")));
+        apply(diff);
+
+        assertEquals(0, diff.getRemovedCount());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), storedIds());
+        assertEquals(checksum(storedIds()), diff.getResultChecksum());
+    }
+
+    @Test
+    public void pendingOperationsAreSkipped() {
+        String localId = Outbox.newLocalId();
+        RealmUtils.addBookmarks(mRealm, Collections.singletonList(
+                local(localId, "Title L", "2017-03-05 10:00:00")));
+        // c has a pending creation and e has a pending deletion
+        Set<String> pendingIds = new HashSet<>(Arrays.asList("c", "e"));
+        SyncDiff diff = new SyncDiff(mRealm, false, pendingIds);
+        diff.addRemote(Arrays.asList(
+                remote("a", "Title A", "2017-03-01 10:00:00"),
+                remote("b", "Title B", "2017-03-02 10:00:00"),
+                remote("e", "Title E", "2017-03-06 10:00:00")));
+        apply(diff);
+
+        assertEquals(0, diff.getCreatedCount());
+        assertEquals(0, diff.getRemovedCount());
+        assertNotNull(find("c"));
+        assertNotNull(find(localId));
+        assertNull(find("e"));
+    }
+
+    @Test
+    public void repeatedRemoteBookmarksAreAddedOnce() {
+        SyncDiff diff = new SyncDiff(mRealm, false, NO_PENDING);
+        // saved.io repeats the last page when there are no more bookmarks
+        List<BookmarkAPI> page = Arrays.asList(
+                remote("a", "Title A", "2017-03-01 10:00:00"),
+                remote("d", "Title D", "2017-03-04 10:00:00"));
+        diff.addRemote(page);
+        diff.addRemote(page);
+        apply(diff);
+
+        assertEquals(1, diff.getCreatedCount());
+        assertEquals(Arrays.asList("a", "d"), storedIds());
+    }
+
+    @Test
+    public void streamingStoresEveryPage() {
+        SyncDiff diff = new SyncDiff(mRealm, true, NO_PENDING);
+        diff.addRemote(Collections.singletonList(remote("d", "Title D", "2017-03-04 10:00:00")));
+        // stored before differences are applied
+        assertNotNull(find("d"));
+        diff.addRemote(Arrays.asList(
+                remote("a", "Title A", "2017-03-01 10:00:00"),
+                remote("b", "Title B", "2017-03-02 10:00:00")));
+        apply(diff);
+
+        assertEquals(1, diff.getCreatedCount());
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(Arrays.asList("a", "b", "d"), storedIds());
+    }
+
+    @Test
+    public void containsNewerComparesWithWatermark() {
+        SyncDiff diff = new SyncDiff(mRealm, false, NO_PENDING);
+        String watermark = "2017-03-03 10:00:00";
+        assertFalse(diff.containsNewer(Arrays.asList(
+                remote("a", "Title A", "2017-03-01 10:00:00"),
+                remote("c", "Title C", "2017-03-03 10:00:00")), watermark));
+        assertTrue(diff.containsNewer(Collections.singletonList(
+                remote("a", "Title A", "2017-03-04 10:00:00")), watermark));
+        assertTrue(diff.containsNewer(Collections.singletonList(
+                remote("d", "Title D", "2017-03-02 10:00:00")), watermark));
+    }
+
+    @Test
+    public void diffOfManyBookmarks() {
+        // 10% of local bookmarks are modified in server, 5% are removed and 5% are new
+        int fraction = BENCHMARK_BOOKMARKS / 20;
+        List<Bookmark> locals = new ArrayList<>(BENCHMARK_BOOKMARKS);
+        for (int i = 0; i < BENCHMARK_BOOKMARKS; i++) {
+            locals.add(local("bm" + i, "Title " + i, "2017-03-01 10:00:00"));
+        }
+        RealmUtils.addBookmarks(mRealm, locals);
+        List<BookmarkAPI> remotes = new ArrayList<>(BENCHMARK_BOOKMARKS);
+        for (int i = fraction; i < BENCHMARK_BOOKMARKS + fraction; i++) {
+            String title = i < fraction * 3 ? "Modified " + i : "Title " + i;
+            remotes.add(remote("bm" + i, title, "2017-03-01 10:00:00"));
+        }
+
+        long start = System.nanoTime();
+        SyncDiff diff = new SyncDiff(mRealm, false, NO_PENDING);
+        long loaded = System.nanoTime();
+        for (int i = 0; i < remotes.size(); i += BENCHMARK_PAGE) {
+            diff.addRemote(remotes.subList(i, Math.min(remotes.size(), i + BENCHMARK_PAGE)));
+        }
+        long diffed = System.nanoTime();
+        apply(diff);
+        long applied = System.nanoTime();
+        Log.i(TAG, String.format("%d bookmarks: snapshot %d ms, diff %d ms, apply %d ms",
+                BENCHMARK_BOOKMARKS,
+                (loaded - start) / 1000000,
+                (diffed - loaded) / 1000000,
+                (applied - diffed) / 1000000));
+
+        assertEquals(fraction, diff.getCreatedCount());
+        assertEquals(fraction * 2, diff.getUpdatedCount());
+        // a, b and c of set up are removed too
+        assertEquals(fraction + 3, diff.getRemovedCount());
+        assertEquals(BENCHMARK_BOOKMARKS, mRealm.where(Bookmark.class).count());
+    }
+
+    private void apply(SyncDiff diff) {
+        mRealm.beginTransaction();
+        diff.apply(mRealm);
+        mRealm.commitTransaction();
+    }
+
+    private Bookmark find(String id) {
+        return mRealm.where(Bookmark.class).equalTo(Bookmark.FIELD_ID, id).findFirst();
+    }
+
+    private List<String> storedIds() {
+        List<String> ids = new ArrayList<>();
+        for (Bookmark bookmark : mRealm.where(Bookmark.class).findAll()) {
+            if (!Outbox.isLocalId(bookmark.getId())) ids.add(bookmark.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static long checksum(List<String> ids) {
+        long checksum = 0;
+        for (String id : ids) {
+            checksum ^= IdHashSet.hash(id);
+        }
+        return checksum;
+    }
+
+    private static Bookmark local(String id, String title, String date) {
+        Bookmark bookmark = new Bookmark();
+        bookmark.setId(id);
+        bookmark.setTitle(title);
+        bookmark.setUrl("http://example.com/" + id);
+        bookmark.setDate(date);
+        return bookmark;
+    }
+
+    private static BookmarkAPI remote(String id, String title, String date) {
+        BookmarkAPI bm = new BookmarkAPI();
+        bm.id = id;
+        bm.title = title;
+        bm.url = "http://example.com/" + id;
+        bm.date = date;
+        return bm;
+    }
+}
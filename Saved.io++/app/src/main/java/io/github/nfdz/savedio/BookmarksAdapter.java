@@ -5,9 +5,12 @@ package io.github.nfdz.savedio;
 
 import android.content.Context;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
@@ -16,34 +19,76 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.github.nfdz.savedio.data.SearchIndex;
 import io.github.nfdz.savedio.model.Bookmark;
-import io.github.nfdz.savedio.utils.URLUtils;
+import io.github.nfdz.savedio.model.BookmarkSort;
+import io.github.nfdz.savedio.sync.IdHashSet;
+import io.github.nfdz.savedio.utils.FaviconCache;
+import io.realm.Realm;
 import io.realm.RealmChangeListener;
 import io.realm.RealmResults;
+import timber.log.Timber;
 
 /**
  * This class is a realm recycler view adapter and manage the creation and binding of bookmark UI items.
+ * Sort is performed natively by realm, and filter in a background thread with a snapshot of the
+ * data. The snapshot only contains the sorted IDs, and searchable fields only when there is a
+ * filter, so bookmarks are not copied. Rows are bound from managed bookmarks looked up by ID, so
+ * only the visible window is read.
+ * - Realm changes: the query is performed again with its sort in the background thread, then it is
+ *   filtered.
+ * - Sort changes: the query is performed again like with realm changes.
+ * - Filter changes: the last sorted snapshot is filtered (see BookmarksFilter). Filter changes
+ *   are debounced, so fast typing does not request redundant filter passes.
+ * Every request invalidates the previous ones, so stale results are never published. Results are
+ * published in the main thread.
+ * Insertions, removals and moves are computed from the IDs in the background thread too, and
+ * skipped if IDs did not change. Realm does not report which objects changed, so after a realm
+ * change bound rows are checked and only the ones whose bound content changed are notified. When
+ * the whole data is swapped, it notifies a full change instead because items are usually
+ * completely different.
  */
 public class BookmarksAdapter extends RecyclerView.Adapter<BookmarksAdapter.BookmarksViewHolder> {
 
     public static final String NO_FILTER = null;
 
+    private static final long FILTER_DEBOUNCE_MILLIS = 150;
+    private static final Object PAYLOAD_CONTENT = new Object();
+    private static final String[] NO_IDS = new String[0];
+
     private final Context mContext;
     private final BookmarkOnClickHandler mClickHandler;
     private final DataChangesListener mChangesListener;
-    private final List<Bookmark> mSortedData;
-    private final List<Bookmark> mFilteredData;
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler;
+    private final AtomicInteger mGeneration;
+    private final Set<BookmarksViewHolder> mBoundHolders;
+
+    // immutable snapshots, they are shared with the background thread
+    private Snapshot mSortedData;
+    private String[] mFilteredIds;
 
     private RealmResults<Bookmark> mData;
-    private Comparator<Bookmark> mComparator;
+    private BookmarksQuery mQuery;
+    private BookmarkSort mSort;
     private String mFilter;
+    private boolean mPendingReload;
+    private boolean mPendingFullRefresh;
+    private Callbacks.FinishCallback<Integer> mPublishedCallback;
+
+    // it is only used in background thread
+    private final BookmarksFilter mDataFilter;
+    private final Runnable mFilterRequest;
 
     /**
      * The interface to be implemented to receive on click events.
@@ -54,6 +99,18 @@ public class BookmarksAdapter extends RecyclerView.Adapter<BookmarksAdapter.Book
         void onLongBookmarkClick(Bookmark bookmark);
     }
 
+    /**
+     * The interface to be implemented to perform the data query. It has to be thread safe because
+     * it is invoked in a background thread.
+     */
+    public interface BookmarksQuery {
+        /**
+         * @param realm
+         * @return results of the query, it could be null.
+         */
+        RealmResults<Bookmark> run(Realm realm);
+    }
+
     /**
      * Constructor.
      * @param context
@@ -63,58 +120,254 @@ public class BookmarksAdapter extends RecyclerView.Adapter<BookmarksAdapter.Book
                             @Nullable BookmarkOnClickHandler clickHandler) {
         mContext = context;
         mClickHandler = clickHandler;
-        mSortedData = new ArrayList<>();
-        mFilteredData = new ArrayList<>();
+        mSortedData = Snapshot.EMPTY;
+        mFilteredIds = NO_IDS;
         mChangesListener = new DataChangesListener();
+        mExecutor = Executors.newSingleThreadExecutor();
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mGeneration = new AtomicInteger();
+        mBoundHolders = new HashSet<>();
+        mDataFilter = new BookmarksFilter();
+        mFilterRequest = new Runnable() {
+            @Override
+            public void run() {
+                requestUpdate();
+            }
+        };
         mFilter = NO_FILTER;
+        setHasStableIds(true);
     }
 
-    public void swapData(RealmResults<Bookmark> data) {
+    /**
+     * Swaps data of the adapter.
+     * @param data results used to listen changes, it could be null.
+     * @param query query that produced given results, it will be performed in background thread.
+     */
+    public void swapData(RealmResults<Bookmark> data, BookmarksQuery query) {
         if (mData != null) mData.removeChangeListener(mChangesListener);
-        mSortedData.clear();
         mData = data;
+        mQuery = query;
         if (mData != null) {
             mData.addChangeListener(mChangesListener);
-            mSortedData.addAll(mData);
-            sort();
-            filter();
+            mPendingReload = true;
+            mPendingFullRefresh = true;
+            requestUpdate();
+        } else {
+            // nothing to process
+            mGeneration.incrementAndGet();
+            mPendingReload = false;
+            mPendingFullRefresh = false;
+            publish(Snapshot.EMPTY, NO_IDS, false, null, false);
+        }
+    }
+
+    public void setSort(BookmarkSort sort) {
+        mSort = sort;
+        mPendingReload = true;
+        requestUpdate();
+    }
+
+    public void setFilter(String filter) {
+        mFilter = TextUtils.isEmpty(filter) ? NO_FILTER : SearchIndex.normalize(filter);
+        mMainHandler.removeCallbacks(mFilterRequest);
+        if (mFilter == NO_FILTER) {
+            // show all bookmarks without delay
+            requestUpdate();
+        } else {
+            mMainHandler.postDelayed(mFilterRequest, FILTER_DEBOUNCE_MILLIS);
         }
-        notifyDataSetChanged();
     }
 
-    private void sort() {
-        // TODO: perform this in a background thread
-        if (mComparator != null) Collections.sort(mSortedData, mComparator);
+    public String getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Sets a callback that is invoked in main thread every time new data is published. It receives
+     * the number of items.
+     * @param callback
+     */
+    public void setOnDataPublishedCallback(Callbacks.FinishCallback<Integer> callback) {
+        mPublishedCallback = callback;
     }
 
-    private void filter() {
-        mFilteredData.clear();
-        if (mFilter != NO_FILTER) {
-            for (Bookmark bm : mSortedData) {
-                if (bm.getTitle().toLowerCase().contains(mFilter)) {
-                    mFilteredData.add(bm);
+    /**
+     * Stops background processing. The adapter cannot be used after invoking this method.
+     */
+    public void release() {
+        mMainHandler.removeCallbacks(mFilterRequest);
+        mGeneration.incrementAndGet();
+        if (mData != null) mData.removeChangeListener(mChangesListener);
+        mData = null;
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Requests a new background update with current state. It invalidates the previous requests.
+     */
+    private void requestUpdate() {
+        mMainHandler.removeCallbacks(mFilterRequest);
+        if (mData == null) return;
+        final int generation = mGeneration.incrementAndGet();
+        final String filter = mFilter;
+        // searchable fields are only loaded when there is something to filter
+        final boolean reload = mPendingReload || (filter != NO_FILTER && mSortedData.mSearchable == null);
+        final boolean fullRefresh = mPendingFullRefresh;
+        final String[] previous = mFilteredIds;
+        final BookmarksQuery query = mQuery;
+        final Snapshot snapshot = mSortedData;
+        final BookmarkSort sort = mSort;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isStale(generation)) return;
+                Snapshot sorted = snapshot;
+                if (reload) {
+                    sorted = load(query, sort, filter != NO_FILTER);
+                    if (sorted == null || isStale(generation)) return;
                 }
+                final Snapshot sortedResult = sorted;
+                final String[] filteredResult = filter == NO_FILTER ? sorted.mIds :
+                        getIds(mDataFilter.filter(sorted.mSearchable, filter));
+                final DiffUtil.DiffResult diff = fullRefresh || Arrays.equals(previous, filteredResult) ?
+                        null : DiffUtil.calculateDiff(new BookmarksDiffCallback(previous, filteredResult), true);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isStale(generation)) return;
+                        if (reload) mPendingReload = false;
+                        if (fullRefresh) mPendingFullRefresh = false;
+                        // differences are valid only if they were computed from current items
+                        boolean isIncremental = !fullRefresh && mFilteredIds == previous;
+                        publish(sortedResult, filteredResult, isIncremental, diff, reload);
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean isStale(int generation) {
+        return generation != mGeneration.get();
+    }
+
+    /**
+     * Performs the query and takes a snapshot of its results in order. It has to be invoked in
+     * background thread.
+     * @param query
+     * @param sort it could be null.
+     * @param searchable true to copy searchable fields too.
+     * @return snapshot or null if there was any error.
+     */
+    private static Snapshot load(BookmarksQuery query, BookmarkSort sort, boolean searchable) {
+        Realm realm = null;
+        try {
+            realm = Realm.getDefaultInstance();
+            RealmResults<Bookmark> results = query.run(realm);
+            if (results == null) return searchable ? Snapshot.EMPTY_SEARCHABLE : Snapshot.EMPTY;
+            if (sort != null) results = sort.sort(results);
+            String[] ids = new String[results.size()];
+            List<Bookmark> searchableData = searchable ? new ArrayList<Bookmark>(ids.length) : null;
+            for (int i = 0; i < ids.length; i++) {
+                Bookmark bookmark = results.get(i);
+                ids[i] = bookmark.getId();
+                if (searchable) searchableData.add(copySearchableFields(bookmark));
             }
+            return new Snapshot(ids, searchable ? Collections.unmodifiableList(searchableData) : null);
+        } catch (Exception e) {
+            Timber.e(e, "There was an error loading bookmarks. ");
+            return null;
+        } finally {
+            if (realm != null) realm.close();
+        }
+    }
+
+    /**
+     * @param bookmark managed bookmark.
+     * @return unmanaged bookmark with the fields used by filter (see BookmarksFilter).
+     */
+    private static Bookmark copySearchableFields(Bookmark bookmark) {
+        Bookmark copy = new Bookmark();
+        copy.setId(bookmark.getId());
+        copy.setTitle(bookmark.getTitle());
+        copy.setUrl(bookmark.getUrl());
+        copy.setNotes(bookmark.getNotes());
+        copy.setListName(bookmark.getListName());
+        return copy;
+    }
+
+    private static String[] getIds(List<Bookmark> bookmarks) {
+        String[] ids = new String[bookmarks.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = bookmarks.get(i).getId();
+        }
+        return ids;
+    }
+
+    /**
+     * Publishes new items. If they are incremental, rows are moved, inserted and removed with given
+     * differences. In other case, it notifies a full change.
+     * @param sortedData
+     * @param filteredIds
+     * @param isIncremental true if new items were computed from current ones.
+     * @param diff differences of IDs, null if IDs are the same.
+     * @param refreshContent true if realm data could have changed.
+     */
+    private void publish(Snapshot sortedData,
+                         String[] filteredIds,
+                         boolean isIncremental,
+                         DiffUtil.DiffResult diff,
+                         boolean refreshContent) {
+        mSortedData = sortedData;
+        mFilteredIds = filteredIds;
+        if (!isIncremental) {
+            notifyDataSetChanged();
         } else {
-            mFilteredData.addAll(mSortedData);
+            if (diff != null) diff.dispatchUpdatesTo(this);
+            if (refreshContent) refreshBoundRows();
         }
+        if (mPublishedCallback != null) mPublishedCallback.onFinish(mFilteredIds.length);
     }
 
-    public void setComparator(Comparator<Bookmark> comparator) {
-        mComparator = comparator;
-        sort();
-        filter();
-        notifyDataSetChanged();
+    /**
+     * Notifies the bound rows whose content changed, payload avoids change animation. Adapter
+     * positions take into account the updates that are not laid out yet.
+     */
+    private void refreshBoundRows() {
+        for (BookmarksViewHolder holder : mBoundHolders) {
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) continue;
+            if (holder.mBoundContent != getContentHash(getBookmark(position), position)) {
+                notifyItemChanged(position, PAYLOAD_CONTENT);
+            }
+        }
     }
 
-    public void setFilter(String filter) {
-        mFilter = TextUtils.isEmpty(filter) ? NO_FILTER : filter.toLowerCase();
-        filter();
-        notifyDataSetChanged();
+    /**
+     * @param bookmark it could be null.
+     * @param position
+     * @return hash of the bound content of given bookmark.
+     */
+    private int getContentHash(Bookmark bookmark, int position) {
+        if (bookmark == null) return 0;
+        // separator visibility depends on being the last one
+        boolean isTheLastOne = position == getItemCount() - 1;
+        String title = bookmark.getTitle();
+        String url = bookmark.getUrl();
+        int hash = title != null ? title.hashCode() : 0;
+        hash = 31 * hash + (url != null ? url.hashCode() : 0);
+        hash = 31 * hash + (bookmark.isFavorite() ? 1 : 0);
+        return 31 * hash + (isTheLastOne ? 1 : 2);
     }
 
-    public String getFilter() {
-        return mFilter;
+    /**
+     * @param position
+     * @return managed bookmark of given position or null if it does not exist anymore (a reload is
+     * pending in that case).
+     */
+    @Nullable
+    private Bookmark getBookmark(int position) {
+        if (mData == null || position < 0 || position >= mFilteredIds.length) return null;
+        return mData.where().equalTo(Bookmark.FIELD_ID, mFilteredIds[position]).findFirst();
     }
 
     @Override
@@ -128,42 +381,104 @@ public class BookmarksAdapter extends RecyclerView.Adapter<BookmarksAdapter.Book
 
     @Override
     public void onBindViewHolder(BookmarksViewHolder holder, int position) {
-        Bookmark bookmark = mFilteredData.get(position);
+        Bookmark bookmark = getBookmark(position);
+        mBoundHolders.add(holder);
+        holder.mBoundContent = getContentHash(bookmark, position);
+        if (bookmark == null) {
+            // it was removed, it will be updated with pending reload
+            holder.mBookmarkName.setText(null);
+            holder.itemView.setTag(null);
+            return;
+        }
         holder.mBookmarkName.setText(bookmark.getTitle());
         Drawable favoriteDrawable = bookmark.isFavorite() ?
                 ContextCompat.getDrawable(mContext, R.drawable.ic_favorite_on)
               : ContextCompat.getDrawable(mContext, R.drawable.ic_favorite_off);
         holder.mFavoriteButton.setImageDrawable(favoriteDrawable);
-        String url = URLUtils.processURL(bookmark.getUrl());
-        String faviconPath = URLUtils.getFaviconPath(url);
-        // add no poster art meanwhile Picasso is loading the poster
+        // add no favicon art meanwhile favicon is loading
         Drawable noFavicon = ContextCompat.getDrawable(mContext, R.drawable.art_no_favicon);
-        if (faviconPath != null) {
-            Picasso.with(mContext)
-                    .load(faviconPath)
-                    .placeholder(noFavicon)
-                    .into(holder.mBookmarkFavicon);
-        } else {
-            holder.mBookmarkFavicon.setImageDrawable(noFavicon);
-        }
+        FaviconCache.getInstance(mContext).into(bookmark.getUrl(), holder.mBookmarkFavicon, noFavicon);
         boolean isTheLastOne = position == getItemCount() - 1;
         holder.mSeparator.setVisibility(isTheLastOne ? View.INVISIBLE : View.VISIBLE);
         holder.itemView.setTag(bookmark.getId());
     }
 
+    @Override
+    public void onViewRecycled(BookmarksViewHolder holder) {
+        mBoundHolders.remove(holder);
+    }
+
     @Override
     public int getItemCount() {
-        return mFilteredData.size();
+        return mFilteredIds.length;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return IdHashSet.hash(mFilteredIds[position]);
+    }
+
+    /**
+     * Differences callback. Items are the same if they have the same ID. Contents are read from realm
+     * when they are bound, so they are the same unless separator visibility changed.
+     */
+    private static class BookmarksDiffCallback extends DiffUtil.Callback {
+
+        private final String[] mOldIds;
+        private final String[] mNewIds;
+
+        BookmarksDiffCallback(String[] oldIds, String[] newIds) {
+            mOldIds = oldIds;
+            mNewIds = newIds;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldIds.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewIds.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return TextUtils.equals(mOldIds[oldItemPosition], mNewIds[newItemPosition]);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            // separator visibility depends on being the last one
+            boolean oldIsTheLastOne = oldItemPosition == mOldIds.length - 1;
+            boolean newIsTheLastOne = newItemPosition == mNewIds.length - 1;
+            return oldIsTheLastOne == newIsTheLastOne;
+        }
+    }
+
+    /**
+     * Sorted IDs of the query results and, only if they are needed to filter, unmodifiable list of
+     * unmanaged bookmarks in the same order with searchable fields.
+     */
+    private static class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(NO_IDS, null);
+        private static final Snapshot EMPTY_SEARCHABLE = new Snapshot(NO_IDS, Collections.<Bookmark>emptyList());
+
+        private final String[] mIds;
+        private final List<Bookmark> mSearchable;
+
+        Snapshot(String[] ids, List<Bookmark> searchable) {
+            mIds = ids;
+            mSearchable = searchable;
+        }
     }
 
     private class DataChangesListener implements RealmChangeListener<RealmResults<Bookmark>> {
         @Override
         public void onChange(RealmResults<Bookmark> element) {
-            mSortedData.clear();
-            mSortedData.addAll(element);
-            sort();
-            filter();
-            notifyDataSetChanged();
+            mPendingReload = true;
+            requestUpdate();
         }
     }
 
@@ -176,6 +491,7 @@ public class BookmarksAdapter extends RecyclerView.Adapter<BookmarksAdapter.Book
         public final ImageView mBookmarkFavicon;
         public final View mSeparator;
         private final ImageView mFavoriteButton;
+        private int mBoundContent;
 
         public BookmarksViewHolder(View view) {
             super(view);
@@ -189,8 +505,10 @@ public class BookmarksAdapter extends RecyclerView.Adapter<BookmarksAdapter.Book
                 @Override
                 public void onClick(View v) {
                     int adapterPosition = getAdapterPosition();
-                    Bookmark bookmark = mFilteredData.get(adapterPosition);
-                    if (mClickHandler != null) mClickHandler.onFavoriteClick(bookmark);
+                    // it could be clicked meanwhile it is being removed
+                    if (adapterPosition == RecyclerView.NO_POSITION) return;
+                    Bookmark bookmark = getBookmark(adapterPosition);
+                    if (bookmark != null && mClickHandler != null) mClickHandler.onFavoriteClick(bookmark);
                 }
             });
 
@@ -198,8 +516,10 @@ public class BookmarksAdapter extends RecyclerView.Adapter<BookmarksAdapter.Book
                 @Override
                 public void onClick(View v) {
                     int adapterPosition = getAdapterPosition();
-                    Bookmark bookmark = mFilteredData.get(adapterPosition);
-                    if (mClickHandler != null) mClickHandler.onBookmarkClick(bookmark);
+                    // it could be clicked meanwhile it is being removed
+                    if (adapterPosition == RecyclerView.NO_POSITION) return;
+                    Bookmark bookmark = getBookmark(adapterPosition);
+                    if (bookmark != null && mClickHandler != null) mClickHandler.onBookmarkClick(bookmark);
                 }
             });
 
@@ -207,8 +527,10 @@ public class BookmarksAdapter extends RecyclerView.Adapter<BookmarksAdapter.Book
                 @Override
                 public boolean onLongClick(View v) {
                     int adapterPosition = getAdapterPosition();
-                    Bookmark bookmark = mFilteredData.get(adapterPosition);
-                    if (mClickHandler != null) mClickHandler.onLongBookmarkClick(bookmark);
+                    // it could be clicked meanwhile it is being removed
+                    if (adapterPosition == RecyclerView.NO_POSITION) return false;
+                    Bookmark bookmark = getBookmark(adapterPosition);
+                    if (bookmark != null && mClickHandler != null) mClickHandler.onLongBookmarkClick(bookmark);
                     return true;
                 }
             });
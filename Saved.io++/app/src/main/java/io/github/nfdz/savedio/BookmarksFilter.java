@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.nfdz.savedio.data.SearchIndex;
+import io.github.nfdz.savedio.data.TrigramIndex;
+import io.github.nfdz.savedio.model.Bookmark;
+import io.realm.Realm;
+import timber.log.Timber;
+
+/**
+ * This class filters sorted bookmark snapshots. It is not thread safe, it has to be used always
+ * from the same background thread.
+ * - A bookmark matches if any of its terms starts with every query term (search index) or if its
+ *   title or URL contains the query (trigram index).
+ * - If nothing matches, it finds similar bookmarks ranked by edit distance (typos).
+ * - Results of recent queries are kept in a small LRU cache, so going back (backspace) is free.
+ * - If the query extends a cached one, only cached results are checked because the result has to
+ *   be a subset of them (fuzzy results are not refined).
+ * Indexes and cache are valid only for one snapshot, they are rebuilt when it changes.
+ */
+class BookmarksFilter {
+
+    private static final int MAX_FUZZY_RESULTS = 50;
+    private static final int MAX_CACHED_RESULTS = 8;
+    private static final String URL_SCHEME_SEPARATOR = "://";
+
+    private final Map<String, FilterResult> mCache;
+    private List<Bookmark> mData;
+    private TrigramIndex mTrigramIndex;
+
+    BookmarksFilter() {
+        mCache = new LinkedHashMap<String, FilterResult>(MAX_CACHED_RESULTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FilterResult> eldest) {
+                return size() > MAX_CACHED_RESULTS;
+            }
+        };
+    }
+
+    /**
+     * Filters given bookmarks.
+     * @param sortedData unmodifiable snapshot.
+     * @param filter normalized filter, it could be null.
+     * @return filtered bookmarks.
+     */
+    List<Bookmark> filter(List<Bookmark> sortedData, String filter) {
+        if (filter == BookmarksAdapter.NO_FILTER) return sortedData;
+        if (mData != sortedData) {
+            mData = sortedData;
+            mTrigramIndex = null;
+            mCache.clear();
+        }
+        FilterResult result = mCache.get(filter);
+        if (result == null) {
+            FilterResult previous = findRefinable(filter);
+            result = previous != null ? refine(previous, filter) : search(filter);
+            if (result.mPositions.length == 0) result = searchSimilar(filter);
+            mCache.put(filter, result);
+        }
+        List<Bookmark> filteredData = new ArrayList<>(result.mPositions.length);
+        for (int position : result.mPositions) {
+            filteredData.add(sortedData.get(position));
+        }
+        return filteredData;
+    }
+
+    /**
+     * @param filter
+     * @return the cached result of the longest query that is a prefix of given one, or null.
+     */
+    private FilterResult findRefinable(String filter) {
+        FilterResult refinable = null;
+        int refinableLength = 0;
+        for (Map.Entry<String, FilterResult> entry : mCache.entrySet()) {
+            String query = entry.getKey();
+            if (!entry.getValue().mFuzzy && query.length() > refinableLength && filter.startsWith(query)) {
+                refinable = entry.getValue();
+                refinableLength = query.length();
+            }
+        }
+        return refinable;
+    }
+
+    private FilterResult refine(FilterResult previous, String filter) {
+        TrigramIndex trigramIndex = getTrigramIndex();
+        Set<String> queryTerms = SearchIndex.tokenizeQuery(filter);
+        int[] positions = new int[previous.mPositions.length];
+        int count = 0;
+        for (int position : previous.mPositions) {
+            if (trigramIndex.getText(position).contains(filter) ||
+                    SearchIndex.matches(mData.get(position), queryTerms)) {
+                positions[count++] = position;
+            }
+        }
+        return new FilterResult(trimmed(positions, count), false);
+    }
+
+    private FilterResult search(String filter) {
+        Set<String> termMatches = searchTerms(filter);
+        boolean[] substringMatches = new boolean[mData.size()];
+        for (int position : getTrigramIndex().findSubstring(filter)) {
+            substringMatches[position] = true;
+        }
+        int[] positions = new int[mData.size()];
+        int count = 0;
+        for (int i = 0; i < mData.size(); i++) {
+            if (substringMatches[i] || (termMatches != null && termMatches.contains(mData.get(i).getId()))) {
+                positions[count++] = i;
+            }
+        }
+        return new FilterResult(trimmed(positions, count), false);
+    }
+
+    private FilterResult searchSimilar(String filter) {
+        return new FilterResult(getTrigramIndex().findFuzzy(filter, MAX_FUZZY_RESULTS), true);
+    }
+
+    private static int[] trimmed(int[] positions, int count) {
+        if (count == positions.length) return positions;
+        int[] result = new int[count];
+        System.arraycopy(positions, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @return trigram index of current data, it builds it if necessary.
+     */
+    private TrigramIndex getTrigramIndex() {
+        if (mTrigramIndex == null) {
+            List<String> texts = new ArrayList<>(mData.size());
+            for (Bookmark bm : mData) {
+                texts.add(getSearchableText(bm));
+            }
+            mTrigramIndex = new TrigramIndex(texts);
+        }
+        return mTrigramIndex;
+    }
+
+    private static String getSearchableText(Bookmark bm) {
+        String title = bm.getTitle() != null ? bm.getTitle() : "";
+        String url = bm.getUrl() != null ? bm.getUrl() : "";
+        int schemeEnd = url.indexOf(URL_SCHEME_SEPARATOR);
+        if (schemeEnd >= 0) url = url.substring(schemeEnd + URL_SCHEME_SEPARATOR.length());
+        // line break avoids matches between fields
+        return SearchIndex.normalize(title) + '\n' + SearchIndex.normalize(url);
+    }
+
+    /**
+     * @param filter
+     * @return IDs of matched bookmarks or null if there is nothing to search.
+     */
+    private static Set<String> searchTerms(String filter) {
+        Realm realm = null;
+        try {
+            realm = Realm.getDefaultInstance();
+            return SearchIndex.search(realm, filter);
+        } catch (Exception e) {
+            Timber.e(e, "There was an error searching bookmarks. ");
+            return null;
+        } finally {
+            if (realm != null) realm.close();
+        }
+    }
+
+    /**
+     * Positions of matched bookmarks in the snapshot.
+     */
+    private static class FilterResult {
+
+        private final int[] mPositions;
+        private final boolean mFuzzy;
+
+        FilterResult(int[] positions, boolean fuzzy) {
+            mPositions = positions;
+            mFuzzy = fuzzy;
+        }
+    }
+}
@@ -45,17 +45,17 @@ import android.widget.Toast;
 import com.miguelcatalan.materialsearchview.MaterialSearchView;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
+import io.github.nfdz.savedio.data.ClickAccumulator;
 import io.github.nfdz.savedio.data.PreferencesUtils;
 import io.github.nfdz.savedio.data.RealmUtils;
 import io.github.nfdz.savedio.model.Bookmark;
-import io.github.nfdz.savedio.model.BookmarkDateComparator;
-import io.github.nfdz.savedio.model.BookmarkDateLastComparator;
 import io.github.nfdz.savedio.model.BookmarkList;
-import io.github.nfdz.savedio.model.BookmarkTitleComparator;
+import io.github.nfdz.savedio.model.BookmarkSort;
 import io.github.nfdz.savedio.model.SyncResult;
 import io.github.nfdz.savedio.sync.SyncUtils;
 import io.github.nfdz.savedio.utils.TasksUtils;
@@ -80,6 +80,9 @@ public class MainActivity extends AppCompatActivity implements
     private static final int ALL_CONTENT = 0;
     private static final int FAVORITE_CONTENT = 1;
     private static final int LIST_CONTENT = 2;
+    private static final int RECENT_CONTENT = 3;
+
+    private static final long RECENT_CONTENT_MILLIS = TimeUnit.DAYS.toMillis(7);
     private static final String NO_LIST = "";
 
     /** Key of the selected list in intent extra data and saved instance state */
@@ -145,6 +148,16 @@ public class MainActivity extends AppCompatActivity implements
         mBookmarksView.setLayoutManager(mLayoutManager);
         mBookmarksView.setHasFixedSize(false);
         mBookmarksAdapter = new BookmarksAdapter(this, this);
+        mBookmarksAdapter.setOnDataPublishedCallback(new Callbacks.FinishCallback<Integer>() {
+            @Override
+            public void onFinish(Integer itemCount) {
+                // restore position when data is available
+                if (mLastPosition != RecyclerView.NO_POSITION && itemCount > 0) {
+                    mBookmarksView.scrollToPosition(Math.min(mLastPosition, itemCount - 1));
+                    mLastPosition = RecyclerView.NO_POSITION;
+                }
+            }
+        });
         mBookmarksView.setAdapter(mBookmarksAdapter);
 
         TouchHelperCallback touchHelperCallback = new TouchHelperCallback();
@@ -187,6 +200,7 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mBookmarksAdapter.release();
         mRealm.close();
     }
 
@@ -208,11 +222,11 @@ public class MainActivity extends AppCompatActivity implements
         mResultListener = new SyncResultListener(result);
         mResultListener.register();
 
-        // update adapter comparator with preferences
+        // update adapter sort with preferences
         PreferencesUtils.retrievePreferredSort(this, new Callbacks.FinishCallback<String>() {
             @Override
             public void onFinish(String sort) {
-                updateComparator(sort);
+                updateSort(sort);
                 updateLists();
                 updateInfoLayout();
                 List<Bookmark> bookmarks = updateBookmarks();
@@ -239,6 +253,8 @@ public class MainActivity extends AppCompatActivity implements
                 .unregisterOnSharedPreferenceChangeListener(this);
         mResultListener.unregister();
         mSwipeRefresh.setRefreshing(false);
+        // store buffered clicks
+        ClickAccumulator.getInstance(this).flush();
     }
 
     @Override
@@ -281,14 +297,8 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
 
-    private void updateComparator(String sort) {
-        if (getString(R.string.pref_sort_date_last_key).equals(sort)) {
-            mBookmarksAdapter.setComparator(new BookmarkDateLastComparator());
-        } else if (getString(R.string.pref_sort_date_old_key).equals(sort)) {
-            mBookmarksAdapter.setComparator(new BookmarkDateComparator());
-        } else {
-            mBookmarksAdapter.setComparator(new BookmarkTitleComparator());
-        }
+    private void updateSort(String sort) {
+        mBookmarksAdapter.setSort(BookmarkSort.fromPreference(this, sort));
     }
 
     /**
@@ -319,6 +329,11 @@ public class MainActivity extends AppCompatActivity implements
                 mContentSwitch.setVisibility(View.GONE);
                 mContentInfo.setVisibility(View.VISIBLE);
                 break;
+            case RECENT_CONTENT:
+                mContentName.setText(getString(R.string.main_content_recent));
+                mContentSwitch.setVisibility(View.GONE);
+                mContentInfo.setVisibility(View.VISIBLE);
+                break;
             default:
                 mContentInfo.setVisibility(View.GONE);
         }
@@ -410,6 +425,15 @@ public class MainActivity extends AppCompatActivity implements
         mDrawerLayout.closeDrawer(GravityCompat.START);
     }
 
+    @OnClick(R.id.nv_main_menu_recent)
+    public void onRecentListClick() {
+        mSelectedList = NO_LIST;
+        mSelectedContent = RECENT_CONTENT;
+        updateInfoLayout();
+        updateBookmarks();
+        mDrawerLayout.closeDrawer(GravityCompat.START);
+    }
+
     /**
      * This method is invoked by navigation lists when user clicks one list.
      */
@@ -428,44 +452,63 @@ public class MainActivity extends AppCompatActivity implements
      */
     private RealmResults<Bookmark> updateBookmarks() {
         showNothing();
-        RealmResults<Bookmark> bookmarks = getBookmarks();
-        mBookmarksAdapter.swapData(bookmarks);
-        if (mLastPosition != RecyclerView.NO_POSITION) {
-            mBookmarksView.scrollToPosition(mLastPosition);
-            mLastPosition = RecyclerView.NO_POSITION;
-        }
+        long recentFrom = System.currentTimeMillis() - RECENT_CONTENT_MILLIS;
+        ContentQuery query = new ContentQuery(mSelectedContent, mSelectedList, recentFrom);
+        RealmResults<Bookmark> bookmarks = query.run(mRealm);
+        mBookmarksAdapter.swapData(bookmarks, query);
         showBookmarks();
         return bookmarks;
     }
 
     /**
-     * Perform a query in realm depending of the selected content flag.
-     * @return results of the query, it could be null.
+     * Realm query of the bookmarks of a content. It is immutable so it can be performed in any
+     * thread with its own realm instance.
      */
-    private RealmResults<Bookmark> getBookmarks() {
-        RealmResults<Bookmark> result;
-        switch (mSelectedContent) {
-            case FAVORITE_CONTENT:
-                result = mRealm.where(Bookmark.class)
-                        .equalTo(Bookmark.FIELD_FAVORITE, true)
-                        .findAll();
-                break;
-            case LIST_CONTENT:
-                BookmarkList list = mRealm.where(BookmarkList.class)
-                        .equalTo(BookmarkList.FIELD_LIST_NAME, mSelectedList)
-                        .findFirst();
-                if (list != null) {
-                    result = list.getBookmarks()
-                            .where()
+    private static class ContentQuery implements BookmarksAdapter.BookmarksQuery {
+
+        private final int mContent;
+        private final String mList;
+        private final long mRecentFrom;
+
+        ContentQuery(int content, String list, long recentFrom) {
+            mContent = content;
+            mList = list;
+            mRecentFrom = recentFrom;
+        }
+
+        /**
+         * Perform a query in realm depending of the selected content flag.
+         * @return results of the query, it could be null.
+         */
+        @Override
+        public RealmResults<Bookmark> run(Realm realm) {
+            RealmResults<Bookmark> result;
+            switch (mContent) {
+                case FAVORITE_CONTENT:
+                    result = realm.where(Bookmark.class)
+                            .equalTo(Bookmark.FIELD_FAVORITE, true)
                             .findAll();
-                } else {
-                    result = null;
-                }
-                break;
-            default:
-                result = mRealm.where(Bookmark.class).findAll();
+                    break;
+                case LIST_CONTENT:
+                    BookmarkList list = realm.where(BookmarkList.class)
+                            .equalTo(BookmarkList.FIELD_LIST_NAME, mList)
+                            .findFirst();
+                    if (list != null) {
+                        result = list.getBookmarks()
+                                .where()
+                                .findAll();
+                    } else {
+                        result = null;
+                    }
+                    break;
+                case RECENT_CONTENT:
+                    result = RealmUtils.findBookmarksAddedSince(realm, mRecentFrom);
+                    break;
+                default:
+                    result = realm.where(Bookmark.class).findAll();
+            }
+            return result;
         }
-        return result;
     }
 
     /**
@@ -473,48 +516,33 @@ public class MainActivity extends AppCompatActivity implements
      * @param bookmark
      */
     @Override
-    public void onBookmarkClick(final Bookmark bookmark) {
-        RealmUtils.incrementClickCounter(this,
-                mRealm,
-                bookmark.getId(),
-                new Callbacks.OperationCallback<Void>() {
-            @Override
-            public void onSuccess(Void result) {
-                openBookmark();
-            }
-            @Override
-            public void onError(String msg, Throwable th) {
-                Timber.e(th, "There was an error incrementing bookmark click counter. " + msg);
-                openBookmark();
-            }
-            private void openBookmark() {
-                String url = URLUtils.processURL(bookmark.getUrl());
-                Intent openIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                final Intent searchIntent = new Intent(Intent.ACTION_WEB_SEARCH);
-                searchIntent.putExtra(SearchManager.QUERY, url);
-                PackageManager pm = getPackageManager();
-
-                if (openIntent.resolveActivity(pm) != null) {
-                    startActivity(openIntent);
-                } else if (searchIntent.resolveActivity(pm) != null) {
-                    Snackbar.make(mContent,
-                            getString(R.string.main_bookmark_unable_click),
-                            Snackbar.LENGTH_LONG)
-                            .setAction(getString(R.string.main_bookmark_unable_click_search), new View.OnClickListener() {
-                                @Override
-                                public void onClick(View view) {
-                                    startActivity(searchIntent);
-                                }
-                            })
-                            .show();
-                } else {
-                    Snackbar.make(mContent,
-                            getString(R.string.main_bookmark_unable_click),
-                            Snackbar.LENGTH_LONG)
-                            .show();
-                }
-            }
-        });
+    public void onBookmarkClick(Bookmark bookmark) {
+        ClickAccumulator.getInstance(this).registerClick(bookmark.getId());
+        String url = URLUtils.processURL(bookmark.getUrl());
+        Intent openIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+        final Intent searchIntent = new Intent(Intent.ACTION_WEB_SEARCH);
+        searchIntent.putExtra(SearchManager.QUERY, url);
+        PackageManager pm = getPackageManager();
+
+        if (openIntent.resolveActivity(pm) != null) {
+            startActivity(openIntent);
+        } else if (searchIntent.resolveActivity(pm) != null) {
+            Snackbar.make(mContent,
+                    getString(R.string.main_bookmark_unable_click),
+                    Snackbar.LENGTH_LONG)
+                    .setAction(getString(R.string.main_bookmark_unable_click_search), new View.OnClickListener() {
+                        @Override
+                        public void onClick(View view) {
+                            startActivity(searchIntent);
+                        }
+                    })
+                    .show();
+        } else {
+            Snackbar.make(mContent,
+                    getString(R.string.main_bookmark_unable_click),
+                    Snackbar.LENGTH_LONG)
+                    .show();
+        }
     }
 
     /**
@@ -612,7 +640,7 @@ public class MainActivity extends AppCompatActivity implements
             PreferencesUtils.retrievePreferredSort(this, new Callbacks.FinishCallback<String>() {
                 @Override
                 public void onFinish(String sort) {
-                    updateComparator(sort);
+                    updateSort(sort);
                 }
             });
         } else if (key.equals(getString(R.string.pref_api_key))) {
@@ -5,6 +5,9 @@ package io.github.nfdz.savedio;
 
 import android.app.Application;
 
+import io.github.nfdz.savedio.data.SavedioMigration;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
 import timber.log.Timber;
 
 public class SavedioppApp extends Application {
@@ -15,5 +18,11 @@ public class SavedioppApp extends Application {
             Timber.uprootAll();
             Timber.plant(new Timber.DebugTree());
         }
+        // set versioned realm configuration before any component uses realm
+        Realm.init(this);
+        Realm.setDefaultConfiguration(new RealmConfiguration.Builder()
+                .schemaVersion(SavedioMigration.SCHEMA_VERSION)
+                .migration(new SavedioMigration())
+                .build());
     }
-}
\ No newline at end of file
+}
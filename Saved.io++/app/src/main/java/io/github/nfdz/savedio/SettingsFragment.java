@@ -18,6 +18,7 @@ import io.github.nfdz.savedio.data.PreferencesUtils;
 import io.github.nfdz.savedio.data.RealmUtils;
 import io.github.nfdz.savedio.sync.SyncUtils;
 import io.github.nfdz.savedio.utils.ImportExportUtils;
+import io.github.nfdz.savedio.widget.WidgetUtils;
 import io.realm.Realm;
 import timber.log.Timber;
 
@@ -121,7 +122,8 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(getString(R.string.pref_sort_key))) {
-            // nothing to do
+            // widgets show favorites with the preferred sort
+            WidgetUtils.updateFavWidgets(getContext());
         } else if (key.equals(getString(R.string.pref_api_key))) {
             if (!TextUtils.isEmpty(PreferencesUtils.getUserAPIKey(getContext()))) {
                 SyncUtils.startImmediateSync(getContext());
@@ -129,6 +131,8 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
         } else if (key.equals(getString(R.string.pref_smart_key))) {
             boolean smartFavs = sharedPreferences.getBoolean(key, getResources().getBoolean(R.bool.pref_smart_default));
             updateFavorites(mRealm, smartFavs);
+        } else if (key.equals(getString(R.string.pref_smart_count_key))) {
+            if (PreferencesUtils.getSmartFavoritesFlag(getContext())) updateFavorites(mRealm, true);
         }
 
         Preference preference = findPreference(key);
@@ -165,8 +169,8 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent resultData) {
-        if (!ImportExportUtils.onImportActivityResult(requestCode, resultCode, resultData, mRealm, getContext()) &&
-            !ImportExportUtils.onExportActivityResult(requestCode, resultCode, resultData, mRealm, getContext())) {
+        if (!ImportExportUtils.onImportActivityResult(requestCode, resultCode, resultData, getContext()) &&
+            !ImportExportUtils.onExportActivityResult(requestCode, resultCode, resultData, getContext())) {
             super.onActivityResult(requestCode, resultCode, resultData);
         }
     }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.github.nfdz.savedio.R;
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.widget.WidgetUtils;
+import io.realm.Realm;
+import timber.log.Timber;
+
+/**
+ * This class accumulates bookmark clicks in memory and stores them in batches. There is only one
+ * instance per process.
+ * - Clicks are buffered by bookmark ID and flushed in one transaction a few seconds after the
+ *   first buffered click, or when flush is invoked (for example, when activity stops).
+ * - Transactions are performed in a background thread.
+ * - Smart favorites are updated with every flushed bookmark. Widgets are only asked to update
+ *   when favorites changed or when a clicked favorite could move in frecent order.
+ */
+public class ClickAccumulator {
+
+    private static final long FLUSH_DELAY_MILLIS = 5000;
+
+    private static ClickAccumulator sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final ExecutorService mExecutor;
+    private final Runnable mFlushRequest;
+    private Map<String, PendingClicks> mPending;
+
+    /**
+     * @param context
+     * @return the process-wide instance.
+     */
+    synchronized public static ClickAccumulator getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ClickAccumulator(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ClickAccumulator(Context context) {
+        mContext = context;
+        mHandler = new Handler(Looper.getMainLooper());
+        mExecutor = Executors.newSingleThreadExecutor();
+        mFlushRequest = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+        mPending = new HashMap<>();
+    }
+
+    /**
+     * Buffers a click of given bookmark.
+     * @param bookmarkId
+     */
+    public synchronized void registerClick(String bookmarkId) {
+        PendingClicks clicks = mPending.get(bookmarkId);
+        if (clicks == null) {
+            clicks = new PendingClicks();
+            mPending.put(bookmarkId, clicks);
+        }
+        clicks.mCount++;
+        clicks.mLastTime = System.currentTimeMillis();
+        if (mPending.size() == 1 && clicks.mCount == 1) {
+            mHandler.postDelayed(mFlushRequest, FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Stores all buffered clicks asynchronously.
+     */
+    public synchronized void flush() {
+        mHandler.removeCallbacks(mFlushRequest);
+        if (mPending.isEmpty()) return;
+        final Map<String, PendingClicks> clicks = mPending;
+        mPending = new HashMap<>();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                store(clicks);
+            }
+        });
+    }
+
+    private void store(final Map<String, PendingClicks> clicks) {
+        final boolean smartFavorites = PreferencesUtils.getSmartFavoritesFlag(mContext);
+        final int favoritesCount = PreferencesUtils.getSmartFavoritesCount(mContext);
+        final boolean frecentOrder = mContext.getString(R.string.pref_sort_frecent_key)
+                .equals(PreferencesUtils.getPreferredSort(mContext));
+        final boolean[] widgetsChanged = { false };
+        Realm realm = null;
+        try {
+            realm = Realm.getDefaultInstance();
+            realm.executeTransaction(new Realm.Transaction() {
+                @Override
+                public void execute(Realm realm) {
+                    for (Map.Entry<String, PendingClicks> entry : clicks.entrySet()) {
+                        Bookmark bookmark = realm.where(Bookmark.class)
+                                .equalTo(Bookmark.FIELD_ID, entry.getKey())
+                                .findFirst();
+                        // it could be removed meanwhile clicks were buffered
+                        if (bookmark == null) continue;
+                        PendingClicks pending = entry.getValue();
+                        bookmark.setClickCounter(bookmark.getClickCounter() + pending.mCount);
+                        bookmark.setFrecency(Frecency.addClicks(bookmark.getFrecency(), pending.mCount, pending.mLastTime));
+                        bookmark.setLastClickTime(pending.mLastTime);
+                        if (smartFavorites && SmartFavorites.onClick(realm, bookmark, favoritesCount)) {
+                            widgetsChanged[0] = true;
+                        } else if (frecentOrder && bookmark.isFavorite()) {
+                            widgetsChanged[0] = true;
+                        }
+                    }
+                }
+            });
+            if (widgetsChanged[0]) WidgetUtils.updateFavWidgets(mContext);
+        } catch (Exception e) {
+            // cached smart favorites could be modified by the failed transaction
+            SmartFavorites.invalidate();
+            Timber.e(e, "There was an error storing bookmark clicks.");
+        } finally {
+            if (realm != null) realm.close();
+        }
+    }
+
+    private static class PendingClicks {
+        int mCount;
+        long mLastTime;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+/**
+ * This class contains static methods to compute frecency, a popularity score of bookmarks where
+ * every click decays exponentially with time (half-life of HALF_LIFE_DAYS).
+ * Score is not stored directly because it would have to be rewritten periodically. Instead it is
+ * stored as a key in logarithmic domain: key = ln(score at time t) + decay rate * t. The key
+ * does not change with time, so:
+ * - Bookmarks are ranked comparing keys, at any time, without computing scores.
+ * - A click is an O(1) update of the key of the clicked bookmark only.
+ */
+public class Frecency {
+
+    /** Key of bookmarks that have never been clicked. */
+    public static final double NO_FRECENCY = 0;
+
+    private static final double HALF_LIFE_DAYS = 30;
+    private static final double DECAY_PER_DAY = Math.log(2) / HALF_LIFE_DAYS;
+    private static final double MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    /**
+     * @param key current frecency key.
+     * @param clicks number of new clicks.
+     * @param time epoch time of the clicks in milliseconds.
+     * @return frecency key with new clicks.
+     */
+    public static double addClicks(double key, int clicks, long time) {
+        return toKey(getScore(key, time) + clicks, time);
+    }
+
+    /**
+     * @param clicks number of clicks.
+     * @param time epoch time in milliseconds when all clicks are considered to be done.
+     * @return frecency key.
+     */
+    public static double fromClicks(int clicks, long time) {
+        return clicks > 0 ? toKey(clicks, time) : NO_FRECENCY;
+    }
+
+    /**
+     * @param key1 frecency key.
+     * @param key2 frecency key.
+     * @return frecency key with the clicks of both keys.
+     */
+    public static double merge(double key1, double key2) {
+        if (key1 == NO_FRECENCY) return key2;
+        if (key2 == NO_FRECENCY) return key1;
+        // ln(e^key1 + e^key2) without overflow, scores are added at any time
+        double max = Math.max(key1, key2);
+        return max + Math.log1p(Math.exp(Math.min(key1, key2) - max));
+    }
+
+    /**
+     * @param key frecency key.
+     * @param time epoch time in milliseconds.
+     * @return decayed score at given time, an approximation of the number of recent clicks.
+     */
+    public static double getScore(double key, long time) {
+        if (key == NO_FRECENCY) return 0;
+        return Math.exp(key - DECAY_PER_DAY * toDays(time));
+    }
+
+    private static double toKey(double score, long time) {
+        return Math.log(score) + DECAY_PER_DAY * toDays(time);
+    }
+
+    private static double toDays(long time) {
+        return time / MILLIS_PER_DAY;
+    }
+}
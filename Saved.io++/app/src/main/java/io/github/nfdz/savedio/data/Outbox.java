@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import android.text.TextUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.PendingOperation;
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * This class contains static methods to manage the outbox, the durable log of bookmark operations
+ * that are applied locally at once and sent to server later in background. Operations are
+ * coalesced by bookmark, so there is at most one pending operation per bookmark:
+ * - Deleting a bookmark whose creation is pending cancels both operations, unless server already
+ *   received the creation, in that case it is replaced by the deletion of the server bookmark.
+ * - Creating a bookmark equal to one whose deletion is pending (for example, undo) cancels the
+ *   deletion and restores the original bookmark ID and date (see cancelDelete).
+ * All methods that modify the outbox have to be invoked inside a transaction.
+ */
+public class Outbox {
+
+    private static final String LOCAL_ID_PREFIX = "local-";
+
+    /**
+     * @return a new ID for bookmarks that have not been created in server yet.
+     */
+    public static String newLocalId() {
+        return LOCAL_ID_PREFIX + UUID.randomUUID().toString();
+    }
+
+    /**
+     * @param bookmarkId
+     * @return true if given ID was assigned locally (see newLocalId).
+     */
+    public static boolean isLocalId(String bookmarkId) {
+        return bookmarkId != null && bookmarkId.startsWith(LOCAL_ID_PREFIX);
+    }
+
+    /**
+     * Cancels the pending deletion of a bookmark equal to given one, if there is any. In that case
+     * the ID and date of the deleted bookmark are set to given bookmark.
+     * @param realm
+     * @param bookmark unmanaged object.
+     * @return true if a deletion was cancelled, so given bookmark does not have to be created.
+     */
+    public static boolean cancelDelete(Realm realm, Bookmark bookmark) {
+        PendingOperation deletion = realm.where(PendingOperation.class)
+                .equalTo(PendingOperation.FIELD_TYPE, PendingOperation.TYPE_DELETE)
+                .equalTo(PendingOperation.FIELD_URL, bookmark.getUrl())
+                .equalTo(PendingOperation.FIELD_TITLE, bookmark.getTitle())
+                .findFirst();
+        if (deletion == null || !TextUtils.equals(emptyToNull(deletion.getListName()),
+                emptyToNull(bookmark.getListName()))) {
+            return false;
+        }
+        bookmark.setId(deletion.getBookmarkId());
+        bookmark.setDate(deletion.getDate());
+        deletion.deleteFromRealm();
+        return true;
+    }
+
+    /**
+     * Enqueues the creation of given bookmark.
+     * @param realm
+     * @param bookmark object with local ID and date.
+     */
+    public static void enqueueCreate(Realm realm, Bookmark bookmark) {
+        enqueueCreate(realm, bookmark, null);
+    }
+
+    /**
+     * Enqueues the creation of given bookmark that could be already received by server. In that
+     * case, only its date is retrieved when the outbox is drained.
+     * @param realm
+     * @param bookmark object with local ID and date.
+     * @param serverId ID assigned by server or null if it was not received.
+     */
+    public static void enqueueCreate(Realm realm, Bookmark bookmark, String serverId) {
+        PendingOperation creation = realm.createObject(PendingOperation.class, bookmark.getId());
+        creation.setType(PendingOperation.TYPE_CREATE);
+        creation.setServerId(serverId);
+        copyFields(bookmark, creation);
+    }
+
+    /**
+     * Enqueues the deletion of given bookmark. If its creation is pending and it was never received
+     * by server, both are cancelled. If server already assigned an ID to it, the creation is
+     * replaced by the deletion of that ID.
+     * @param realm
+     * @param bookmark managed or unmanaged object.
+     */
+    public static void enqueueDelete(Realm realm, Bookmark bookmark) {
+        String bookmarkId = bookmark.getId();
+        PendingOperation operation = realm.where(PendingOperation.class)
+                .equalTo(PendingOperation.FIELD_BOOKMARK_ID, bookmarkId)
+                .findFirst();
+        if (operation != null) {
+            if (operation.getType() != PendingOperation.TYPE_CREATE) return;
+            String serverId = operation.getServerId();
+            operation.deleteFromRealm();
+            // it was never sent to server, so there is nothing to delete there
+            if (serverId == null) return;
+            // it was created in server but its date could not be retrieved yet
+            bookmarkId = serverId;
+            if (realm.where(PendingOperation.class)
+                    .equalTo(PendingOperation.FIELD_BOOKMARK_ID, bookmarkId)
+                    .count() > 0) {
+                return;
+            }
+        }
+        PendingOperation deletion = realm.createObject(PendingOperation.class, bookmarkId);
+        deletion.setType(PendingOperation.TYPE_DELETE);
+        copyFields(bookmark, deletion);
+    }
+
+    /**
+     * @param realm
+     * @return IDs of bookmarks with pending operations.
+     */
+    public static Set<String> getPendingIds(Realm realm) {
+        RealmResults<PendingOperation> operations = realm.where(PendingOperation.class).findAll();
+        Set<String> ids = new HashSet<>(operations.size() * 2);
+        for (PendingOperation operation : operations) {
+            ids.add(operation.getBookmarkId());
+        }
+        return ids;
+    }
+
+    /**
+     * @param realm
+     * @return the highest number of failed attempts of pending operations.
+     */
+    public static int getMaxAttempts(Realm realm) {
+        Number attempts = realm.where(PendingOperation.class).max(PendingOperation.FIELD_ATTEMPTS);
+        return attempts == null ? 0 : attempts.intValue();
+    }
+
+    /**
+     * @param realm
+     * @return true if there is no pending operation.
+     */
+    public static boolean isEmpty(Realm realm) {
+        return realm.where(PendingOperation.class).count() == 0;
+    }
+
+    private static void copyFields(Bookmark bookmark, PendingOperation operation) {
+        operation.setUrl(bookmark.getUrl());
+        operation.setTitle(bookmark.getTitle());
+        operation.setListName(bookmark.getListName());
+        operation.setDate(bookmark.getDate());
+        operation.setTime(System.currentTimeMillis());
+    }
+
+    private static String emptyToNull(String string) {
+        return TextUtils.isEmpty(string) ? null : string;
+    }
+}
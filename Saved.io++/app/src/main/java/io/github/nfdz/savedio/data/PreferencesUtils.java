@@ -22,6 +22,9 @@ public class PreferencesUtils {
     private static final String LAST_SYNC_KEY = "last-sync";
     private static final long LAST_SYNC_DEFAULT = 0L;
 
+    private static final String FAVORITES_FINGERPRINT_KEY = "favorites-fingerprint";
+    private static final long FAVORITES_FINGERPRINT_DEFAULT = 0L;
+
     /**
      * Retrieves sort preference in an asynchronous way.
      * @param context
@@ -81,6 +84,22 @@ public class PreferencesUtils {
         return sp.getBoolean(key, defaultFlag);
     }
 
+    /**
+     * Retrieves the number of smart favorites preference in a synchronous way.
+     * @param context
+     * @return int number of smart favorites
+     */
+    public static int getSmartFavoritesCount(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_smart_count_key);
+        String defaultCount = context.getString(R.string.pref_smart_count_default);
+        try {
+            return Integer.parseInt(sp.getString(key, defaultCount));
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(defaultCount);
+        }
+    }
+
     /**
      * Retrieves last synchronization time in an asynchronous way.
      * @param context
@@ -114,6 +133,56 @@ public class PreferencesUtils {
         editor.apply();
     }
 
+    /**
+     * Retrieves the fingerprint of favorites shown in widgets in a synchronous way.
+     * @param context
+     * @return long fingerprint
+     */
+    public static long getFavoritesFingerprint(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getLong(FAVORITES_FINGERPRINT_KEY, FAVORITES_FINGERPRINT_DEFAULT);
+    }
+
+    /**
+     * Updates the fingerprint of favorites shown in widgets with the given one.
+     * @param context
+     * @param fingerprint
+     */
+    public static void setFavoritesFingerprint(Context context, long fingerprint) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putLong(FAVORITES_FINGERPRINT_KEY, fingerprint);
+        editor.apply();
+    }
+
+    /**
+     * Retrieves full synchronization interval preference in a synchronous way.
+     * @param context
+     * @return interval in days.
+     */
+    public static int getFullSyncIntervalDays(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_full_sync_key);
+        String defaultInterval = context.getString(R.string.pref_full_sync_default);
+        try {
+            return Integer.parseInt(sp.getString(key, defaultInterval));
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(defaultInterval);
+        }
+    }
+
+    /**
+     * Retrieves export format preference in a synchronous way.
+     * @param context
+     * @return String export format
+     */
+    public static String getExportFormat(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_export_format_key);
+        String defaultFormat = context.getString(R.string.pref_export_format_default);
+        return sp.getString(key, defaultFormat);
+    }
+
     /**
      * Updates finished introduction flag preference in an asynchronous way.
      * @param context
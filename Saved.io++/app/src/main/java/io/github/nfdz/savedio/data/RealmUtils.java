@@ -8,17 +8,16 @@ import android.content.Context;
 import android.text.TextUtils;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 import io.github.nfdz.savedio.Callbacks;
 import io.github.nfdz.savedio.R;
 import io.github.nfdz.savedio.model.Bookmark;
-import io.github.nfdz.savedio.model.BookmarkClicksComparator;
 import io.github.nfdz.savedio.model.BookmarkList;
-import io.github.nfdz.savedio.model.serialization.BookmarkSerializer;
-import io.github.nfdz.savedio.model.serialization.SerializationException;
+import io.github.nfdz.savedio.model.SearchTerm;
 import io.github.nfdz.savedio.widget.WidgetUtils;
 import io.realm.Realm;
 import io.realm.RealmAsyncTask;
@@ -33,25 +32,22 @@ public class RealmUtils {
      * Adds a bookmark to realm asynchronously.
      * @param realm it has to be initialized.
      * @param bookmark unmanaged object that contains all information.
+     * @param enqueue true to enqueue its creation in the outbox (see Outbox).
      * @param callback to be notified.
      * @return realm async task.
      */
     public static RealmAsyncTask addBookmark(final Realm realm,
                                              final Bookmark bookmark,
+                                             final boolean enqueue,
                                              final Callbacks.OperationCallback<Void> callback) {
         return realm.executeTransactionAsync(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                Bookmark managedBookmark = realm.copyToRealm(bookmark);
-                String listName = managedBookmark.getListName();
-                if (!TextUtils.isEmpty(listName)) {
-                    BookmarkList list = realm.where(BookmarkList.class).equalTo(BookmarkList.FIELD_LIST_NAME, listName).findFirst();
-                    // ensure that this list exists in realm
-                    if (list == null) {
-                        list = realm.createObject(BookmarkList.class, listName);
-                    }
-                    list.getBookmarks().add(managedBookmark);
+                // it could restore the ID of a bookmark whose deletion is pending
+                if (enqueue && !Outbox.cancelDelete(realm, bookmark)) {
+                    Outbox.enqueueCreate(realm, bookmark);
                 }
+                storeBookmark(realm, bookmark, null, null);
             }
         }, new Realm.Transaction.OnSuccess() {
             @Override
@@ -66,6 +62,105 @@ public class RealmUtils {
         });
     }
 
+    /**
+     * Adds given bookmarks to realm in a single transaction synchronously. It is intended to be
+     * used in background threads to store big amounts of bookmarks.
+     * @param realm it has to be initialized.
+     * @param bookmarks unmanaged objects that contain all information.
+     */
+    public static void addBookmarks(Realm realm, final List<Bookmark> bookmarks) {
+        realm.executeTransaction(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                Map<String, BookmarkList> listsCache = new HashMap<>();
+                Map<String, SearchTerm> termsCache = new HashMap<>();
+                for (Bookmark bookmark : bookmarks) {
+                    storeBookmark(realm, bookmark, listsCache, termsCache);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds given bookmarks to realm and enqueues their creation in the outbox in a single
+     * transaction synchronously (see Outbox).
+     * @param realm it has to be initialized.
+     * @param bookmarks unmanaged objects with local ID and date.
+     * @param serverIds ID already assigned by server to each bookmark, or null if it was not
+     *                  received.
+     */
+    public static void addPendingBookmarks(Realm realm,
+                                           final List<Bookmark> bookmarks,
+                                           final List<String> serverIds) {
+        realm.executeTransaction(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                Map<String, BookmarkList> listsCache = new HashMap<>();
+                Map<String, SearchTerm> termsCache = new HashMap<>();
+                for (int i = 0; i < bookmarks.size(); i++) {
+                    Bookmark bookmark = bookmarks.get(i);
+                    Outbox.enqueueCreate(realm, bookmark, serverIds.get(i));
+                    storeBookmark(realm, bookmark, listsCache, termsCache);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stores given bookmark, adds it to its list and to the search index. It has to be invoked
+     * inside a transaction.
+     * @param realm
+     * @param bookmark unmanaged object that contains all information.
+     * @param listsCache cache of managed lists by name, it could be null.
+     * @param termsCache cache of managed search terms, it could be null.
+     * @return managed bookmark.
+     */
+    private static Bookmark storeBookmark(Realm realm,
+                                          Bookmark bookmark,
+                                          Map<String, BookmarkList> listsCache,
+                                          Map<String, SearchTerm> termsCache) {
+        Bookmark managedBookmark = realm.copyToRealm(bookmark);
+        addToList(realm, managedBookmark, listsCache);
+        SearchIndex.index(realm, managedBookmark, termsCache);
+        return managedBookmark;
+    }
+
+    /**
+     * Adds given bookmark to its list, if it has one. It has to be invoked inside a transaction.
+     * @param realm
+     * @param bookmark managed object.
+     * @param listsCache cache of managed lists by name, it could be null.
+     */
+    private static void addToList(Realm realm, Bookmark bookmark, Map<String, BookmarkList> listsCache) {
+        String listName = bookmark.getListName();
+        if (TextUtils.isEmpty(listName)) return;
+        BookmarkList list = listsCache != null ? listsCache.get(listName) : null;
+        if (list == null) {
+            list = realm.where(BookmarkList.class).equalTo(BookmarkList.FIELD_LIST_NAME, listName).findFirst();
+            // ensure that this list exists in realm
+            if (list == null) {
+                list = realm.createObject(BookmarkList.class, listName);
+            }
+            if (listsCache != null) listsCache.put(listName, list);
+        }
+        list.getBookmarks().add(bookmark);
+    }
+
+    /**
+     * Removes given bookmark from its list, if it has one, and removes the list if it is empty.
+     * It has to be invoked inside a transaction.
+     * @param realm
+     * @param bookmark managed object.
+     */
+    private static void removeFromList(Realm realm, Bookmark bookmark) {
+        String listName = bookmark.getListName();
+        if (TextUtils.isEmpty(listName)) return;
+        BookmarkList list = realm.where(BookmarkList.class).equalTo(BookmarkList.FIELD_LIST_NAME, listName).findFirst();
+        if (list == null) return;
+        list.getBookmarks().remove(bookmark);
+        if (list.getBookmarks().isEmpty()) list.deleteFromRealm();
+    }
+
     /**
      * Cancels realm async task if it is not null and is not cancelled.
      * @param asyncTransaction
@@ -80,11 +175,13 @@ public class RealmUtils {
      * Removes a bookmark from realm asynchronously.
      * @param realm it has to be initialized.
      * @param bookmarkId id that will be removed.
+     * @param enqueue true to enqueue its deletion in the outbox (see Outbox).
      * @param callback to be notified, it will return a copy of bookmark object when success.
      * @return realm async task.
      */
     public static RealmAsyncTask removeBookmark(Realm realm,
                                                 final String bookmarkId,
+                                                final boolean enqueue,
                                                 final Callbacks.OperationCallback<Bookmark> callback) {
         final AtomicReference<Bookmark> removedBookmark = new AtomicReference<>(null);
         return realm.executeTransactionAsync(new Realm.Transaction() {
@@ -94,8 +191,9 @@ public class RealmUtils {
                     .equalTo(Bookmark.FIELD_ID, bookmarkId)
                     .findFirst();
                 Bookmark bookmarkToRemove = realm.copyFromRealm(bookmark);
+                if (enqueue) Outbox.enqueueDelete(realm, bookmark);
                 String listName = bookmark.getListName();
-                bookmark.deleteFromRealm();
+                SearchIndex.delete(realm, bookmark);
                 // if it was contained in a list, ensure that this list is not empty
                 if (!TextUtils.isEmpty(listName)) {
                     BookmarkList list = realm.where(BookmarkList.class).equalTo(BookmarkList.FIELD_LIST_NAME, listName).findFirst();
@@ -118,6 +216,65 @@ public class RealmUtils {
         });
     }
 
+    /**
+     * Replaces the ID and date of a bookmark with the ones assigned by server (or with a new local
+     * ID). Realm does not allow to modify primary keys, so bookmark is stored again with all its
+     * information. If there is a bookmark with the new ID already, local information is merged
+     * into it. It has to be invoked inside a transaction.
+     * @param realm
+     * @param oldId
+     * @param newId
+     * @param newDate
+     */
+    public static void replaceBookmarkId(Realm realm, String oldId, String newId, String newDate) {
+        Bookmark bookmark = realm.where(Bookmark.class)
+                .equalTo(Bookmark.FIELD_ID, oldId)
+                .findFirst();
+        if (bookmark == null) return;
+        Bookmark replacement = realm.copyFromRealm(bookmark);
+        String listName = bookmark.getListName();
+        SearchIndex.delete(realm, bookmark);
+        // a synchronization could store it already
+        Bookmark stored = realm.where(Bookmark.class)
+                .equalTo(Bookmark.FIELD_ID, newId)
+                .findFirst();
+        if (stored == null) {
+            replacement.setId(newId);
+            replacement.setDate(newDate);
+            storeBookmark(realm, replacement, null, null);
+        } else {
+            mergeBookmark(realm, replacement, stored);
+        }
+        // merged bookmark could be in other list, so ensure that previous list is not empty
+        if (!TextUtils.isEmpty(listName)) {
+            BookmarkList list = realm.where(BookmarkList.class).equalTo(BookmarkList.FIELD_LIST_NAME, listName).findFirst();
+            if (list != null && list.getBookmarks().isEmpty()) list.deleteFromRealm();
+        }
+        if (replacement.isFavorite()) SmartFavorites.invalidate();
+    }
+
+    /**
+     * Merges local information of a bookmark (favorite flag, clicks, notes and list) into a stored
+     * one that represents the same bookmark. It has to be invoked inside a transaction.
+     * @param realm
+     * @param local unmanaged object.
+     * @param stored managed object.
+     */
+    private static void mergeBookmark(Realm realm, Bookmark local, Bookmark stored) {
+        stored.setFavorite(stored.isFavorite() || local.isFavorite());
+        stored.setClickCounter(stored.getClickCounter() + local.getClickCounter());
+        stored.setFrecency(Frecency.merge(stored.getFrecency(), local.getFrecency()));
+        stored.setLastClickTime(Math.max(stored.getLastClickTime(), local.getLastClickTime()));
+        if (!TextUtils.isEmpty(local.getNotes())) stored.setNotes(local.getNotes());
+        String listName = local.getListName();
+        if (!TextUtils.isEmpty(listName) && !listName.equals(stored.getListName())) {
+            removeFromList(realm, stored);
+            stored.setListName(listName);
+            addToList(realm, stored, null);
+        }
+        SearchIndex.reindex(realm, stored, null);
+    }
+
     /**
      * Retrieves the names of bookmark lists asynchronously.
      * @param realm it has to be initialized.
@@ -148,6 +305,19 @@ public class RealmUtils {
         });
     }
 
+    /**
+     * Queries the bookmarks added since given time (for example, this week). It filters by the
+     * indexed timestamp of bookmarks instead of comparing date strings.
+     * @param realm it has to be initialized.
+     * @param from epoch time in milliseconds (inclusive).
+     * @return bookmarks results.
+     */
+    public static RealmResults<Bookmark> findBookmarksAddedSince(Realm realm, long from) {
+        return realm.where(Bookmark.class)
+                .greaterThanOrEqualTo(Bookmark.FIELD_TIMESTAMP, from)
+                .findAll();
+    }
+
     /**
      * Sets given bookmark favorite flag with the given one asynchronously.
      * @param context
@@ -173,6 +343,7 @@ public class RealmUtils {
         }, new Realm.Transaction.OnSuccess() {
             @Override
             public void onSuccess() {
+                SmartFavorites.invalidate();
                 callback.onSuccess(null);
                 WidgetUtils.updateFavWidgets(context);
             }
@@ -207,6 +378,7 @@ public class RealmUtils {
         }, new Realm.Transaction.OnSuccess() {
             @Override
             public void onSuccess() {
+                SmartFavorites.invalidate();
                 callback.onSuccess(null);
                 WidgetUtils.updateFavWidgets(context);
             }
@@ -231,18 +403,7 @@ public class RealmUtils {
         return realm.executeTransactionAsync(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                List<Bookmark> bookmarks = realm.where(Bookmark.class).findAll();
-                List<Bookmark> clickedBookmarks = new ArrayList<Bookmark>();
-                for (Bookmark bm : bookmarks) {
-                    if (bm.getClickCounter() > 0) {
-                        clickedBookmarks.add(bm);
-                    }
-                }
-                Collections.sort(clickedBookmarks, new BookmarkClicksComparator());
-                for (int i = 0; i < clickedBookmarks.size() && i < 10; i++) {
-                    Bookmark bm = clickedBookmarks.get(i);
-                    bm.setFavorite(true);
-                }
+                SmartFavorites.recompute(realm, PreferencesUtils.getSmartFavoritesCount(context));
             }
         }, new Realm.Transaction.OnSuccess() {
             @Override
@@ -258,58 +419,6 @@ public class RealmUtils {
         });
     }
 
-    /**
-     * Increments click counter of given bookmark and sets its favorite flag to true if smart
-     * favorites is enabled and its clicks exceeds the clicks of any favorite bookmark.
-     * @param context
-     * @param realm
-     * @param bookmarkId
-     * @param callback
-     * @return realm async task.
-     */
-    public static RealmAsyncTask incrementClickCounter(final Context context,
-                                                       Realm realm,
-                                                       final String bookmarkId,
-                                                       final Callbacks.OperationCallback<Void> callback) {
-        return realm.executeTransactionAsync(new Realm.Transaction() {
-            @Override
-            public void execute(Realm realm) {
-                Bookmark bookmark = realm.where(Bookmark.class)
-                        .equalTo(Bookmark.FIELD_ID, bookmarkId)
-                        .findFirst();
-                bookmark.incrementClickCounter();
-                // if smart favorites, check if it has to modify favorite list
-                if (PreferencesUtils.getSmartFavoritesFlag(context) && !bookmark.isFavorite()) {
-                    List<Bookmark> favorites = realm.where(Bookmark.class)
-                                                    .equalTo(Bookmark.FIELD_FAVORITE, true)
-                                                    .findAll();
-                    if (favorites.size() < 10) {
-                        bookmark.setFavorite(true);
-                    } else {
-                        for (Bookmark bm : favorites) {
-                            if (bm.getClickCounter() < bookmark.getClickCounter()) {
-                                bm.setFavorite(false);
-                                bookmark.setFavorite(true);
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
-        }, new Realm.Transaction.OnSuccess() {
-            @Override
-            public void onSuccess() {
-                callback.onSuccess(null);
-                WidgetUtils.updateFavWidgets(context);
-            }
-        }, new Realm.Transaction.OnError() {
-            @Override
-            public void onError(Throwable e) {
-                callback.onError("There was an error incrementing bookmark click counter.", e);
-            }
-        });
-    }
-
     /**
      * Sets list notification flag of given list name asynchronously.
      * @param realm
@@ -343,47 +452,4 @@ public class RealmUtils {
         });
     }
 
-    /**
-     * Retrieves and serializes all stored bookmarks asynchronously.
-     * @param realm
-     * @param context
-     * @param callback
-     * @return realm async task.
-     */
-    public static RealmAsyncTask getSerializedBookmarks(Realm realm,
-                                                        final Context context,
-                                                        final Callbacks.OperationCallback<String> callback) {
-        final AtomicReference<String> serializedBookmarks = new AtomicReference();
-        final AtomicReference<SerializationException> ex = new AtomicReference();
-        return realm.executeTransactionAsync(new Realm.Transaction() {
-            @Override
-            public void execute(Realm realm) {
-                RealmResults<Bookmark> bookmarks = realm.where(Bookmark.class).findAll();
-                try {
-                    serializedBookmarks.set(BookmarkSerializer.serialize(bookmarks));
-                } catch (SerializationException e) {
-                    ex.set(e);
-                }
-            }
-        }, new Realm.Transaction.OnSuccess() {
-            @Override
-            public void onSuccess() {
-                if (!TextUtils.isEmpty(serializedBookmarks.get())) {
-                    callback.onSuccess(serializedBookmarks.get());
-                } else {
-                    if (ex.get() != null) {
-                        callback.onError(context.getString(ex.get().getMessageId()), ex.get());
-                    } else {
-                        callback.onError(context.getString(R.string.serialize_empty_error), new Throwable());
-                    }
-                }
-            }
-        }, new Realm.Transaction.OnError() {
-            @Override
-            public void onError(Throwable e) {
-                callback.onError(context.getString(R.string.serialize_error), e);
-            }
-        });
-    }
-
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.PendingOperation;
+import io.github.nfdz.savedio.model.SearchTerm;
+import io.github.nfdz.savedio.model.SyncWatermark;
+import io.github.nfdz.savedio.utils.DateUtils;
+import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.FieldAttribute;
+import io.realm.RealmMigration;
+import io.realm.RealmObjectSchema;
+import io.realm.RealmSchema;
+
+/**
+ * This class migrates realm schema between versions.
+ * - Version 1: search inverted index (SearchTerm).
+ * - Version 2: indexes of bookmark favorite flag and list name (hot query filters).
+ * - Version 3: bookmark timestamp (parsed date) to sort and filter by date with a primitive field.
+ * - Version 4: bookmark frecency and last click time (previous clicks are considered recent).
+ * - Version 5: outbox of bookmark operations pending to be sent to server (PendingOperation).
+ * - Version 6: search terms stored in every bookmark and common URL tokens not indexed, so search
+ *   index is built again.
+ * - Version 7: watermark of last synchronization (SyncWatermark), previously kept in preferences
+ *   where it survived a realm recreated from scratch. First synchronization after it is full.
+ */
+public class SavedioMigration implements RealmMigration {
+
+    public static final long SCHEMA_VERSION = 7;
+
+    private static final String BOOKMARK_CLASS = "Bookmark";
+    private static final String SEARCH_TERM_CLASS = "SearchTerm";
+    private static final String PENDING_OPERATION_CLASS = "PendingOperation";
+    private static final String SYNC_WATERMARK_CLASS = "SyncWatermark";
+
+    @Override
+    public void migrate(DynamicRealm realm, long oldVersion, long newVersion) {
+        RealmSchema schema = realm.getSchema();
+        if (oldVersion == 0) {
+            RealmObjectSchema bookmarkSchema = schema.get(BOOKMARK_CLASS);
+            schema.create(SEARCH_TERM_CLASS)
+                    .addField(SearchTerm.FIELD_TERM, String.class, FieldAttribute.PRIMARY_KEY)
+                    .addRealmListField(SearchTerm.FIELD_BOOKMARKS, bookmarkSchema);
+            // it is built in version 6
+            oldVersion++;
+        }
+        if (oldVersion == 1) {
+            schema.get(BOOKMARK_CLASS)
+                    .addIndex(Bookmark.FIELD_FAVORITE)
+                    .addIndex(Bookmark.FIELD_LIST);
+            oldVersion++;
+        }
+        if (oldVersion == 2) {
+            schema.get(BOOKMARK_CLASS)
+                    .addField(Bookmark.FIELD_TIMESTAMP, long.class, FieldAttribute.INDEXED);
+            for (DynamicRealmObject bookmark : realm.where(BOOKMARK_CLASS).findAll()) {
+                long timestamp = DateUtils.parseDate(bookmark.getString(Bookmark.FIELD_DATE));
+                bookmark.setLong(Bookmark.FIELD_TIMESTAMP, timestamp);
+            }
+            oldVersion++;
+        }
+        if (oldVersion == 3) {
+            schema.get(BOOKMARK_CLASS)
+                    .addField(Bookmark.FIELD_FRECENCY, double.class)
+                    .addField(Bookmark.FIELD_LAST_CLICK, long.class);
+            long now = System.currentTimeMillis();
+            for (DynamicRealmObject bookmark : realm.where(BOOKMARK_CLASS)
+                    .greaterThan(Bookmark.FIELD_CLICK_COUNTER, 0)
+                    .findAll()) {
+                int clicks = bookmark.getInt(Bookmark.FIELD_CLICK_COUNTER);
+                bookmark.setDouble(Bookmark.FIELD_FRECENCY, Frecency.fromClicks(clicks, now));
+                bookmark.setLong(Bookmark.FIELD_LAST_CLICK, now);
+            }
+            oldVersion++;
+        }
+        if (oldVersion == 4) {
+            schema.create(PENDING_OPERATION_CLASS)
+                    .addField(PendingOperation.FIELD_BOOKMARK_ID, String.class, FieldAttribute.PRIMARY_KEY)
+                    .addField(PendingOperation.FIELD_TYPE, int.class)
+                    .addField(PendingOperation.FIELD_URL, String.class)
+                    .addField(PendingOperation.FIELD_TITLE, String.class)
+                    .addField(PendingOperation.FIELD_LIST, String.class)
+                    .addField(PendingOperation.FIELD_DATE, String.class)
+                    .addField(PendingOperation.FIELD_TIME, long.class)
+                    .addField(PendingOperation.FIELD_ATTEMPTS, int.class)
+                    .addField(PendingOperation.FIELD_SERVER_ID, String.class);
+            oldVersion++;
+        }
+        if (oldVersion == 5) {
+            schema.get(BOOKMARK_CLASS)
+                    .addField(Bookmark.FIELD_SEARCH_TERMS, String.class);
+            realm.delete(SEARCH_TERM_CLASS);
+            buildSearchIndex(realm);
+            oldVersion++;
+        }
+        if (oldVersion == 6) {
+            schema.create(SYNC_WATERMARK_CLASS)
+                    .addField(SyncWatermark.FIELD_NEWEST_DATE, String.class)
+                    .addField(SyncWatermark.FIELD_NEWEST_ID, String.class)
+                    .addField(SyncWatermark.FIELD_CHECKSUM, long.class)
+                    .addField(SyncWatermark.FIELD_LAST_FULL_SYNC, long.class);
+            oldVersion++;
+        }
+    }
+
+    private static void buildSearchIndex(DynamicRealm realm) {
+        Map<String, DynamicRealmObject> terms = new HashMap<>();
+        for (DynamicRealmObject bookmark : realm.where(BOOKMARK_CLASS).findAll()) {
+            Set<String> bookmarkTerms = SearchIndex.tokenize(bookmark.getString(Bookmark.FIELD_TITLE),
+                    bookmark.getString(Bookmark.FIELD_URL),
+                    bookmark.getString(Bookmark.FIELD_NOTE),
+                    bookmark.getString(Bookmark.FIELD_LIST));
+            bookmark.setString(Bookmark.FIELD_SEARCH_TERMS, SearchIndex.join(bookmarkTerms));
+            for (String term : bookmarkTerms) {
+                DynamicRealmObject searchTerm = terms.get(term);
+                if (searchTerm == null) {
+                    searchTerm = realm.createObject(SEARCH_TERM_CLASS, term);
+                    terms.put(term, searchTerm);
+                }
+                searchTerm.getList(SearchTerm.FIELD_BOOKMARKS).add(bookmark);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof SavedioMigration;
+    }
+
+    @Override
+    public int hashCode() {
+        return SavedioMigration.class.hashCode();
+    }
+}
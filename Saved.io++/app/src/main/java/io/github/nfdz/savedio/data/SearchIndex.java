@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import android.text.TextUtils;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.SearchTerm;
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * This class contains static methods to maintain and query the search inverted index. Every
+ * term is stored once with the list of bookmarks that contain it. Terms are the words of
+ * bookmark title, URL (host and path), notes and list name, normalized in lower case and
+ * without accents.
+ * Notes:
+ * - Tokens contained in the URL of most bookmarks (www, com, html...) are not indexed, their term
+ *   lists would contain almost every bookmark and they are useless to filter.
+ * - Every bookmark stores its terms, so updates only touch the lists of terms that changed and
+ *   unchanged bookmarks are not touched at all. Removing a bookmark from a term list is linear
+ *   in the size of the list.
+ * - Links to removed bookmarks are removed automatically from term lists by realm, so terms
+ *   could be empty until they are pruned.
+ * - All write methods have to be invoked inside a transaction.
+ */
+public class SearchIndex {
+
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final String URL_SCHEME_SEPARATOR = "://";
+    private static final String TERMS_SEPARATOR = " ";
+    private static final Set<String> URL_STOP_WORDS = new HashSet<>(Arrays.asList(
+            "www", "m", "com", "org", "net", "html", "htm", "php", "asp", "aspx", "index"));
+
+    /**
+     * Normalizes given text: lower case and without accents.
+     * @param text
+     * @return normalized text.
+     */
+    public static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            // remove accents (they are decomposed as non spacing marks)
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Computes search terms of given bookmark fields.
+     * @param title
+     * @param url
+     * @param notes
+     * @param listName
+     * @return set of terms.
+     */
+    public static Set<String> tokenize(String title, String url, String notes, String listName) {
+        Set<String> terms = new HashSet<>();
+        if (!TextUtils.isEmpty(url)) {
+            // ignore scheme
+            int schemeEnd = url.indexOf(URL_SCHEME_SEPARATOR);
+            tokenize(schemeEnd >= 0 ? url.substring(schemeEnd + URL_SCHEME_SEPARATOR.length()) : url, terms);
+            terms.removeAll(URL_STOP_WORDS);
+        }
+        tokenize(title, terms);
+        tokenize(notes, terms);
+        tokenize(listName, terms);
+        return terms;
+    }
+
+    private static void tokenize(String text, Set<String> terms) {
+        if (TextUtils.isEmpty(text)) return;
+        String normalized = normalize(text);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean isTermChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (isTermChar && start < 0) {
+                start = i;
+            } else if (!isTermChar && start >= 0) {
+                terms.add(normalized.substring(start, Math.min(i, start + MAX_TERM_LENGTH)));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Computes search terms of given query.
+     * @param query
+     * @return set of terms in query order.
+     */
+    public static Set<String> tokenizeQuery(String query) {
+        Set<String> queryTerms = new LinkedHashSet<>();
+        tokenize(query, queryTerms);
+        return queryTerms;
+    }
+
+    /**
+     * Checks if given bookmark matches given query terms without using the index.
+     * @param bookmark
+     * @param queryTerms
+     * @return true if every query term is the prefix of any bookmark term.
+     */
+    public static boolean matches(Bookmark bookmark, Set<String> queryTerms) {
+        if (queryTerms.isEmpty()) return false;
+        Set<String> terms = tokenize(bookmark);
+        for (String queryTerm : queryTerms) {
+            boolean found = false;
+            for (String term : terms) {
+                if (term.startsWith(queryTerm)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    private static Set<String> tokenize(Bookmark bookmark) {
+        return tokenize(bookmark.getTitle(),
+                bookmark.getUrl(),
+                bookmark.getNotes(),
+                bookmark.getListName());
+    }
+
+    /**
+     * Adds given bookmark to the index. It has not to be indexed yet.
+     * @param realm
+     * @param bookmark managed object.
+     * @param termsCache cache of managed terms, it could be null.
+     */
+    public static void index(Realm realm, Bookmark bookmark, Map<String, SearchTerm> termsCache) {
+        Set<String> terms = tokenize(bookmark);
+        for (String term : terms) {
+            addToTerm(realm, bookmark, term, termsCache);
+        }
+        bookmark.setSearchTerms(join(terms));
+    }
+
+    /**
+     * Updates the index with the current fields of given indexed bookmark. Only lists of added or
+     * removed terms are modified.
+     * @param realm
+     * @param bookmark managed object.
+     * @param termsCache cache of managed terms, it could be null.
+     * @return true if its terms changed.
+     */
+    public static boolean reindex(Realm realm, Bookmark bookmark, Map<String, SearchTerm> termsCache) {
+        Set<String> terms = tokenize(bookmark);
+        Set<String> indexedTerms = split(bookmark.getSearchTerms());
+        if (terms.equals(indexedTerms)) return false;
+        for (String term : indexedTerms) {
+            if (terms.contains(term)) continue;
+            SearchTerm searchTerm = termsCache != null ? termsCache.get(term) : null;
+            if (searchTerm == null) {
+                searchTerm = realm.where(SearchTerm.class).equalTo(SearchTerm.FIELD_TERM, term).findFirst();
+            }
+            if (searchTerm != null) {
+                searchTerm.getBookmarks().remove(bookmark);
+                if (searchTerm.getBookmarks().isEmpty()) {
+                    if (termsCache != null) termsCache.remove(term);
+                    searchTerm.deleteFromRealm();
+                }
+            }
+        }
+        for (String term : terms) {
+            if (!indexedTerms.contains(term)) addToTerm(realm, bookmark, term, termsCache);
+        }
+        bookmark.setSearchTerms(join(terms));
+        return true;
+    }
+
+    /**
+     * Deletes given bookmark from realm and removes its terms that become empty. Realm removes
+     * links to deleted objects, so term lists are not traversed.
+     * @param realm
+     * @param bookmark managed object.
+     */
+    public static void delete(Realm realm, Bookmark bookmark) {
+        Set<String> indexedTerms = split(bookmark.getSearchTerms());
+        bookmark.deleteFromRealm();
+        for (String term : indexedTerms) {
+            SearchTerm searchTerm = realm.where(SearchTerm.class).equalTo(SearchTerm.FIELD_TERM, term).findFirst();
+            if (searchTerm != null && searchTerm.getBookmarks().isEmpty()) searchTerm.deleteFromRealm();
+        }
+    }
+
+    private static void addToTerm(Realm realm,
+                                  Bookmark bookmark,
+                                  String term,
+                                  Map<String, SearchTerm> termsCache) {
+        SearchTerm searchTerm = termsCache != null ? termsCache.get(term) : null;
+        if (searchTerm == null) {
+            searchTerm = realm.where(SearchTerm.class).equalTo(SearchTerm.FIELD_TERM, term).findFirst();
+            if (searchTerm == null) {
+                searchTerm = realm.createObject(SearchTerm.class, term);
+            }
+            if (termsCache != null) termsCache.put(term, searchTerm);
+        }
+        searchTerm.getBookmarks().add(bookmark);
+    }
+
+    /**
+     * @param terms
+     * @return given terms in the format stored in bookmarks.
+     */
+    static String join(Set<String> terms) {
+        return TextUtils.join(TERMS_SEPARATOR, terms);
+    }
+
+    private static Set<String> split(String terms) {
+        if (TextUtils.isEmpty(terms)) return Collections.emptySet();
+        // terms only contain letters and digits
+        return new HashSet<>(Arrays.asList(terms.split(TERMS_SEPARATOR)));
+    }
+
+    /**
+     * Removes terms that do not contain any bookmark.
+     * @param realm
+     */
+    public static void pruneEmptyTerms(Realm realm) {
+        realm.where(SearchTerm.class).isEmpty(SearchTerm.FIELD_BOOKMARKS).findAll().deleteAllFromRealm();
+    }
+
+    /**
+     * Searches bookmarks that match given query. Every term of the query is a prefix and all of
+     * them have to be matched.
+     * @param realm
+     * @param query
+     * @return set of matched bookmark IDs or null if the query does not contain any term.
+     */
+    public static Set<String> search(Realm realm, String query) {
+        Set<String> queryTerms = tokenizeQuery(query);
+        if (queryTerms.isEmpty()) return null;
+        Set<String> result = null;
+        for (String queryTerm : queryTerms) {
+            Set<String> matches = new HashSet<>();
+            RealmResults<SearchTerm> terms = realm.where(SearchTerm.class)
+                    .beginsWith(SearchTerm.FIELD_TERM, queryTerm)
+                    .findAll();
+            for (SearchTerm term : terms) {
+                for (Bookmark bookmark : term.getBookmarks()) {
+                    String id = bookmark.getId();
+                    // intersection with previous terms
+                    if (result == null || result.contains(id)) matches.add(id);
+                }
+            }
+            result = matches;
+            if (result.isEmpty()) break;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.nfdz.savedio.model.Bookmark;
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * This class ranks bookmarks to compute smart favorites (the most used ones recently). Bookmarks
+ * are ranked by frecency key, which does not change with time, so cached ranking is still valid.
+ * - Recomputation selects the top bookmarks with a min-heap bounded by the number of favorites,
+ *   so clicked bookmarks are neither copied nor fully sorted.
+ * - Clicks update the ranking incrementally against a cached heap of current favorites. The least
+ *   used favorite is always on top, so it is the one evicted when a bookmark outranks it.
+ * The cache is validated with the number of favorites and it is rebuilt if it is stale (for
+ * example, if favorites were removed by a synchronization).
+ * All methods have to be invoked inside a transaction.
+ */
+public class SmartFavorites {
+
+    private static FavoritesHeap sFavorites;
+
+    /**
+     * Computes smart favorites from scratch and sets favorite flags.
+     * @param realm
+     * @param count number of favorites.
+     */
+    public static synchronized void recompute(Realm realm, int count) {
+        FavoritesHeap top = new FavoritesHeap();
+        RealmResults<Bookmark> clicked = realm.where(Bookmark.class)
+                .greaterThan(Bookmark.FIELD_CLICK_COUNTER, 0)
+                .findAll();
+        for (Bookmark bookmark : clicked) {
+            double score = getScore(bookmark);
+            if (top.size() < count) {
+                top.push(bookmark.getId(), score);
+            } else if (count > 0 && score > top.peekScore()) {
+                top.pop();
+                top.push(bookmark.getId(), score);
+            }
+        }
+        for (Bookmark favorite : new ArrayList<>(getFavorites(realm))) {
+            if (!top.contains(favorite.getId())) favorite.setFavorite(false);
+        }
+        for (String id : top.getIds()) {
+            Bookmark bookmark = findBookmark(realm, id);
+            if (bookmark != null) bookmark.setFavorite(true);
+        }
+        sFavorites = top;
+    }
+
+    /**
+     * Updates smart favorites with a click of given bookmark. Its click counter has to be
+     * incremented before invoking this method.
+     * @param realm
+     * @param bookmark managed object.
+     * @param count number of favorites.
+     * @return true if favorite bookmarks changed.
+     */
+    public static synchronized boolean onClick(Realm realm, Bookmark bookmark, int count) {
+        FavoritesHeap favorites = getValidFavorites(realm, count);
+        String id = bookmark.getId();
+        double score = getScore(bookmark);
+        if (bookmark.isFavorite()) {
+            favorites.update(id, score);
+            return false;
+        } else if (favorites.size() < count) {
+            bookmark.setFavorite(true);
+            favorites.push(id, score);
+            return true;
+        } else if (count > 0 && score > favorites.peekScore()) {
+            Bookmark evicted = findBookmark(realm, favorites.pop());
+            if (evicted != null) evicted.setFavorite(false);
+            bookmark.setFavorite(true);
+            favorites.push(id, score);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Invalidates cached favorites. It has to be invoked when favorites are modified outside of
+     * this class.
+     */
+    public static synchronized void invalidate() {
+        sFavorites = null;
+    }
+
+    private static double getScore(Bookmark bookmark) {
+        return bookmark.getFrecency();
+    }
+
+    /**
+     * @return cached favorites or rebuilt ones if cache is stale, with at most given count.
+     */
+    private static FavoritesHeap getValidFavorites(Realm realm, int count) {
+        RealmResults<Bookmark> favorites = getFavorites(realm);
+        if (sFavorites == null || sFavorites.size() != favorites.size()) {
+            sFavorites = new FavoritesHeap();
+            for (Bookmark favorite : favorites) {
+                sFavorites.push(favorite.getId(), getScore(favorite));
+            }
+        }
+        // number of favorites could have been reduced
+        while (sFavorites.size() > count) {
+            Bookmark evicted = findBookmark(realm, sFavorites.pop());
+            if (evicted != null) evicted.setFavorite(false);
+        }
+        return sFavorites;
+    }
+
+    private static RealmResults<Bookmark> getFavorites(Realm realm) {
+        return realm.where(Bookmark.class)
+                .equalTo(Bookmark.FIELD_FAVORITE, true)
+                .findAll();
+    }
+
+    private static Bookmark findBookmark(Realm realm, String id) {
+        return realm.where(Bookmark.class)
+                .equalTo(Bookmark.FIELD_ID, id)
+                .findFirst();
+    }
+
+    /**
+     * Indexed binary min-heap of bookmark IDs by score. The position of every ID is tracked so the
+     * score of any of them can be updated in O(log k).
+     */
+    static class FavoritesHeap {
+
+        private final List<String> mIds = new ArrayList<>();
+        private final List<Double> mScores = new ArrayList<>();
+        private final Map<String, Integer> mPositions = new HashMap<>();
+
+        int size() {
+            return mIds.size();
+        }
+
+        boolean contains(String id) {
+            return mPositions.containsKey(id);
+        }
+
+        List<String> getIds() {
+            return new ArrayList<>(mIds);
+        }
+
+        double peekScore() {
+            return mScores.get(0);
+        }
+
+        void push(String id, double score) {
+            mIds.add(id);
+            mScores.add(score);
+            mPositions.put(id, mIds.size() - 1);
+            siftUp(mIds.size() - 1);
+        }
+
+        /**
+         * @return ID with the lowest score.
+         */
+        String pop() {
+            String id = mIds.get(0);
+            int last = mIds.size() - 1;
+            swap(0, last);
+            mIds.remove(last);
+            mScores.remove(last);
+            mPositions.remove(id);
+            if (!mIds.isEmpty()) siftDown(0);
+            return id;
+        }
+
+        void update(String id, double score) {
+            Integer position = mPositions.get(id);
+            if (position == null) {
+                push(id, score);
+                return;
+            }
+            double oldScore = mScores.get(position);
+            mScores.set(position, score);
+            if (score < oldScore) {
+                siftUp(position);
+            } else {
+                siftDown(position);
+            }
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (mScores.get(parent) <= mScores.get(position)) break;
+                swap(parent, position);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            int size = mIds.size();
+            while (true) {
+                int smallest = position;
+                int left = position * 2 + 1;
+                int right = left + 1;
+                if (left < size && mScores.get(left) < mScores.get(smallest)) smallest = left;
+                if (right < size && mScores.get(right) < mScores.get(smallest)) smallest = right;
+                if (smallest == position) break;
+                swap(position, smallest);
+                position = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            if (i == j) return;
+            String id = mIds.get(i);
+            mIds.set(i, mIds.get(j));
+            mIds.set(j, id);
+            Double score = mScores.get(i);
+            mScores.set(i, mScores.get(j));
+            mScores.set(j, score);
+            mPositions.put(mIds.get(i), i);
+            mPositions.put(mIds.get(j), j);
+        }
+    }
+}
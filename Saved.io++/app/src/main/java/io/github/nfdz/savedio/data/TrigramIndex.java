@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory trigram index of normalized texts for substring and typo tolerant search. Documents
+ * are identified by its position in the list used to build the index.
+ * Posting lists are stored in compact primitive arrays: sorted trigram keys, offsets and sorted
+ * document positions (compressed sparse row layout), so once it is built it has only a few objects.
+ * - Substring search: intersection of the posting lists of query trigrams and verification of
+ *   the candidates.
+ * - Fuzzy search: candidates that share enough trigrams with the query (q-gram lemma) are ranked
+ *   with the approximate substring edit distance (Sellers algorithm). Candidates have to share at
+ *   least one trigram even if the query is too short for the lemma, so documents are never
+ *   verified one by one. Queries shorter than four characters are not searched.
+ */
+public class TrigramIndex {
+
+    private static final int GRAM = 3;
+    private static final int MIN_FUZZY_QUERY = GRAM + 1;
+    private static final int[] NO_RESULTS = new int[0];
+
+    private final String[] mTexts;
+    private final long[] mKeys;
+    private final int[] mOffsets;
+    private final int[] mPostings;
+
+    /**
+     * Constructor. It builds the index.
+     * @param texts normalized texts of the documents.
+     */
+    public TrigramIndex(List<String> texts) {
+        mTexts = texts.toArray(new String[texts.size()]);
+        Map<Long, IntArray> postings = new HashMap<>();
+        int totalPostings = 0;
+        for (int doc = 0; doc < mTexts.length; doc++) {
+            String text = mTexts[doc];
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                Long key = key(text, i);
+                IntArray docs = postings.get(key);
+                if (docs == null) {
+                    docs = new IntArray();
+                    postings.put(key, docs);
+                }
+                // documents are processed in order, so it is only necessary to check the last one
+                if (docs.mSize == 0 || docs.mData[docs.mSize - 1] != doc) {
+                    docs.add(doc);
+                    totalPostings++;
+                }
+            }
+        }
+        mKeys = new long[postings.size()];
+        int k = 0;
+        for (Long key : postings.keySet()) {
+            mKeys[k++] = key;
+        }
+        Arrays.sort(mKeys);
+        mOffsets = new int[mKeys.length + 1];
+        mPostings = new int[totalPostings];
+        int offset = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            IntArray docs = postings.get(mKeys[i]);
+            mOffsets[i] = offset;
+            System.arraycopy(docs.mData, 0, mPostings, offset, docs.mSize);
+            offset += docs.mSize;
+        }
+        mOffsets[mKeys.length] = offset;
+    }
+
+    private static long key(String text, int start) {
+        return ((long) text.charAt(start) << 32) |
+                ((long) text.charAt(start + 1) << 16) |
+                (long) text.charAt(start + 2);
+    }
+
+    /**
+     * @param key
+     * @return index of given key or negative value if it is not indexed.
+     */
+    private int find(long key) {
+        return Arrays.binarySearch(mKeys, key);
+    }
+
+    public int size() {
+        return mTexts.length;
+    }
+
+    /**
+     * @param position
+     * @return normalized text of the document in given position.
+     */
+    public String getText(int position) {
+        return mTexts[position];
+    }
+
+    /**
+     * Searches documents that contain given query.
+     * @param query normalized query.
+     * @return sorted positions of matched documents.
+     */
+    public int[] findSubstring(String query) {
+        if (query.length() < GRAM) {
+            // too short to use trigrams, scan all texts
+            IntArray matches = new IntArray();
+            for (int doc = 0; doc < mTexts.length; doc++) {
+                if (mTexts[doc].contains(query)) matches.add(doc);
+            }
+            return matches.toArray();
+        }
+        // start with the shortest posting list
+        int[] keyIndexes = new int[query.length() - GRAM + 1];
+        int shortest = 0;
+        for (int i = 0; i < keyIndexes.length; i++) {
+            keyIndexes[i] = find(key(query, i));
+            if (keyIndexes[i] < 0) return NO_RESULTS;
+            if (postingsSize(keyIndexes[i]) < postingsSize(keyIndexes[shortest])) shortest = i;
+        }
+        int start = mOffsets[keyIndexes[shortest]];
+        int[] candidates = Arrays.copyOfRange(mPostings, start, start + postingsSize(keyIndexes[shortest]));
+        int count = candidates.length;
+        for (int i = 0; i < keyIndexes.length && count > 0; i++) {
+            if (i != shortest) count = intersect(candidates, count, keyIndexes[i]);
+        }
+        // verify candidates
+        IntArray matches = new IntArray();
+        for (int i = 0; i < count; i++) {
+            if (mTexts[candidates[i]].contains(query)) matches.add(candidates[i]);
+        }
+        return matches.toArray();
+    }
+
+    private int postingsSize(int keyIndex) {
+        return mOffsets[keyIndex + 1] - mOffsets[keyIndex];
+    }
+
+    /**
+     * Intersects in place given candidates with the posting list of given key.
+     * @return number of remaining candidates.
+     */
+    private int intersect(int[] candidates, int count, int keyIndex) {
+        int p = mOffsets[keyIndex];
+        int end = mOffsets[keyIndex + 1];
+        int result = 0;
+        for (int i = 0; i < count && p < end; i++) {
+            while (p < end && mPostings[p] < candidates[i]) p++;
+            if (p < end && mPostings[p] == candidates[i]) candidates[result++] = candidates[i];
+        }
+        return result;
+    }
+
+    /**
+     * Searches documents that contain something similar to given query.
+     * @param query normalized query.
+     * @param maxResults
+     * @return positions of matched documents ranked by edit distance (best first).
+     */
+    public int[] findFuzzy(String query, int maxResults) {
+        if (query.length() < MIN_FUZZY_QUERY) return NO_RESULTS;
+        int maxErrors = Math.max(1, query.length() / 4);
+        // count shared trigrams
+        int[] shared = new int[mTexts.length];
+        long[] queryKeys = new long[query.length() - GRAM + 1];
+        for (int i = 0; i < queryKeys.length; i++) {
+            queryKeys[i] = key(query, i);
+        }
+        Arrays.sort(queryKeys);
+        int distinctKeys = 0;
+        for (int i = 0; i < queryKeys.length; i++) {
+            if (i > 0 && queryKeys[i] == queryKeys[i - 1]) continue;
+            distinctKeys++;
+            int keyIndex = find(queryKeys[i]);
+            if (keyIndex < 0) continue;
+            for (int p = mOffsets[keyIndex]; p < mOffsets[keyIndex + 1]; p++) {
+                shared[mPostings[p]]++;
+            }
+        }
+        // every edit operation could break up to three trigrams of the query, so a match shares at
+        // least this number of them. Short queries could match without sharing any trigram, but
+        // verifying every document on each keystroke is too expensive, so one is required.
+        int minShared = Math.max(1, distinctKeys - GRAM * maxErrors);
+        final List<int[]> ranked = new ArrayList<>();
+        for (int doc = 0; doc < mTexts.length; doc++) {
+            if (shared[doc] < minShared) continue;
+            int distance = substringDistance(query, mTexts[doc]);
+            if (distance <= maxErrors) ranked.add(new int[] { doc, distance });
+        }
+        Collections.sort(ranked, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] result1, int[] result2) {
+                if (result1[1] != result2[1]) return result1[1] < result2[1] ? -1 : 1;
+                return result1[0] < result2[0] ? -1 : (result1[0] == result2[0] ? 0 : 1);
+            }
+        });
+        int[] results = new int[Math.min(maxResults, ranked.size())];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = ranked.get(i)[0];
+        }
+        return results;
+    }
+
+    /**
+     * Computes the minimum edit distance between given query and any substring of given text
+     * (Sellers algorithm). It stops as soon as it finds a distance that is zero.
+     * @param query
+     * @param text
+     * @return edit distance.
+     */
+    static int substringDistance(String query, String text) {
+        int m = query.length();
+        int[] column = new int[m + 1];
+        for (int i = 0; i <= m; i++) {
+            column[i] = i;
+        }
+        int best = m;
+        for (int j = 0; j < text.length() && best > 0; j++) {
+            char t = text.charAt(j);
+            // a match could start at any position of the text
+            int diagonal = column[0];
+            column[0] = 0;
+            for (int i = 1; i <= m; i++) {
+                int previous = column[i];
+                int cost = query.charAt(i - 1) == t ? 0 : 1;
+                column[i] = Math.min(Math.min(column[i] + 1, column[i - 1] + 1), diagonal + cost);
+                diagonal = previous;
+            }
+            best = Math.min(best, column[m]);
+        }
+        return best;
+    }
+
+    /**
+     * Growable primitive int array.
+     */
+    private static class IntArray {
+
+        private int[] mData = new int[4];
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mData.length) mData = Arrays.copyOf(mData, mSize * 2);
+            mData[mSize++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mData, mSize);
+        }
+    }
+}
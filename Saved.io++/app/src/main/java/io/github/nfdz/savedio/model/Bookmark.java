@@ -3,7 +3,9 @@
  */
 package io.github.nfdz.savedio.model;
 
+import io.github.nfdz.savedio.utils.DateUtils;
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 
 /**
@@ -20,8 +22,13 @@ public class Bookmark extends RealmObject {
     public static final String FIELD_TITLE = "mTitle";
     public static final String FIELD_NOTE = "mNotes";
     public static final String FIELD_DATE = "mDate";
+    public static final String FIELD_TIMESTAMP = "mTimestamp";
     public static final String FIELD_LIST = "mListName";
     public static final String FIELD_FAVORITE = "mIsFavorite";
+    public static final String FIELD_CLICK_COUNTER = "mClickCounter";
+    public static final String FIELD_FRECENCY = "mFrecency";
+    public static final String FIELD_LAST_CLICK = "mLastClickTime";
+    public static final String FIELD_SEARCH_TERMS = "mSearchTerms";
 
     @PrimaryKey
     private String mId;
@@ -34,12 +41,26 @@ public class Bookmark extends RealmObject {
 
     private String mDate;
 
+    /** Parsed date in epoch milliseconds, it is updated with the date. */
+    @Index
+    private long mTimestamp;
+
+    @Index
     private String mListName;
 
+    @Index
     private boolean mIsFavorite;
 
     private int mClickCounter;
 
+    /** Frecency key of clicks (see Frecency). */
+    private double mFrecency;
+
+    private long mLastClickTime;
+
+    /** Terms of the bookmark in the search index separated by spaces (see SearchIndex). */
+    private String mSearchTerms;
+
     public void setId(String id) {
         mId = id;
     }
@@ -58,6 +79,7 @@ public class Bookmark extends RealmObject {
 
     public void setDate(String date) {
         mDate = date;
+        mTimestamp = DateUtils.parseDate(date);
     }
 
     public void setListName(String listName) {
@@ -72,6 +94,18 @@ public class Bookmark extends RealmObject {
         mClickCounter = clickCounter;
     }
 
+    public void setFrecency(double frecency) {
+        mFrecency = frecency;
+    }
+
+    public void setLastClickTime(long lastClickTime) {
+        mLastClickTime = lastClickTime;
+    }
+
+    public void setSearchTerms(String searchTerms) {
+        mSearchTerms = searchTerms;
+    }
+
     public void incrementClickCounter() {
         setClickCounter(mClickCounter + 1);
     }
@@ -96,6 +130,10 @@ public class Bookmark extends RealmObject {
         return mDate;
     }
 
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
     public String getListName() {
         return mListName;
     }
@@ -107,4 +145,16 @@ public class Bookmark extends RealmObject {
     public int getClickCounter() {
         return mClickCounter;
     }
+
+    public double getFrecency() {
+        return mFrecency;
+    }
+
+    public long getLastClickTime() {
+        return mLastClickTime;
+    }
+
+    public String getSearchTerms() {
+        return mSearchTerms;
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model;
+
+import android.content.Context;
+
+import io.github.nfdz.savedio.R;
+import io.realm.RealmQuery;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Bookmarks order performed natively by realm. Favorite bookmarks always go first and then the
+ * order depends on the sort preference. It is immutable so it can be used in any thread.
+ * Date orders use the parsed timestamp of bookmarks, so they compare primitive values. Frecent
+ * order uses frecency key (see Frecency).
+ */
+public class BookmarkSort {
+
+    private final String[] mFields;
+    private final Sort[] mOrders;
+
+    private BookmarkSort(String field, Sort order) {
+        mFields = new String[] { Bookmark.FIELD_FAVORITE, field };
+        mOrders = new Sort[] { Sort.DESCENDING, order };
+    }
+
+    /**
+     * @param context
+     * @param sort preferred sort key.
+     * @return the order of given sort preference, title order if it is unknown.
+     */
+    public static BookmarkSort fromPreference(Context context, String sort) {
+        if (context.getString(R.string.pref_sort_date_last_key).equals(sort)) {
+            return new BookmarkSort(Bookmark.FIELD_TIMESTAMP, Sort.DESCENDING);
+        } else if (context.getString(R.string.pref_sort_date_old_key).equals(sort)) {
+            return new BookmarkSort(Bookmark.FIELD_TIMESTAMP, Sort.ASCENDING);
+        } else if (context.getString(R.string.pref_sort_frecent_key).equals(sort)) {
+            return new BookmarkSort(Bookmark.FIELD_FRECENCY, Sort.DESCENDING);
+        } else {
+            return new BookmarkSort(Bookmark.FIELD_TITLE, Sort.ASCENDING);
+        }
+    }
+
+    /**
+     * Performs given query sorting its results.
+     * @param query
+     * @return sorted results.
+     */
+    public RealmResults<Bookmark> findAll(RealmQuery<Bookmark> query) {
+        return query.findAllSorted(mFields, mOrders);
+    }
+
+    /**
+     * @param results
+     * @return a sorted view of given results.
+     */
+    public RealmResults<Bookmark> sort(RealmResults<Bookmark> results) {
+        return results.sort(mFields, mOrders);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * This class contains a bookmark operation that is already applied locally but it has not been
+ * sent to server yet (see Outbox). There is at most one operation per bookmark.
+ */
+public class PendingOperation extends RealmObject {
+
+    public static final int TYPE_CREATE = 1;
+    public static final int TYPE_DELETE = 2;
+
+    // strings with the name of attributes to ease realm queries
+    public static final String FIELD_BOOKMARK_ID = "mBookmarkId";
+    public static final String FIELD_TYPE = "mType";
+    public static final String FIELD_URL = "mUrl";
+    public static final String FIELD_TITLE = "mTitle";
+    public static final String FIELD_LIST = "mListName";
+    public static final String FIELD_DATE = "mDate";
+    public static final String FIELD_TIME = "mTime";
+    public static final String FIELD_ATTEMPTS = "mAttempts";
+    public static final String FIELD_SERVER_ID = "mServerId";
+
+    @PrimaryKey
+    private String mBookmarkId;
+
+    private int mType;
+
+    private String mUrl;
+
+    private String mTitle;
+
+    private String mListName;
+
+    /** Date of the bookmark, it is used to restore deleted bookmarks. */
+    private String mDate;
+
+    /** Epoch time in milliseconds when operation was enqueued. */
+    private long mTime;
+
+    /** Number of failed attempts to send it to server. */
+    private int mAttempts;
+
+    /**
+     * ID assigned by server to a creation that was already received, but whose server date could
+     * not be retrieved yet. Creation is not idempotent, so it must not be sent again.
+     */
+    private String mServerId;
+
+    public void setBookmarkId(String bookmarkId) {
+        mBookmarkId = bookmarkId;
+    }
+
+    public void setType(int type) {
+        mType = type;
+    }
+
+    public void setUrl(String url) {
+        mUrl = url;
+    }
+
+    public void setTitle(String title) {
+        mTitle = title;
+    }
+
+    public void setListName(String listName) {
+        mListName = listName;
+    }
+
+    public void setDate(String date) {
+        mDate = date;
+    }
+
+    public void setTime(long time) {
+        mTime = time;
+    }
+
+    public void setAttempts(int attempts) {
+        mAttempts = attempts;
+    }
+
+    public void setServerId(String serverId) {
+        mServerId = serverId;
+    }
+
+    public String getBookmarkId() {
+        return mBookmarkId;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getListName() {
+        return mListName;
+    }
+
+    public String getDate() {
+        return mDate;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public int getAttempts() {
+        return mAttempts;
+    }
+
+    public String getServerId() {
+        return mServerId;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model;
+
+
+import io.realm.RealmList;
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * This class is an entry of the search inverted index: a normalized term and the bookmarks that
+ * contain it.
+ */
+public class SearchTerm extends RealmObject {
+
+    // strings with the name of attributes to ease realm queries
+    public static final String FIELD_TERM = "mTerm";
+    public static final String FIELD_BOOKMARKS = "mBookmarks";
+
+    @PrimaryKey
+    private String mTerm;
+
+    private RealmList<Bookmark> mBookmarks;
+
+    public String getTerm() {
+        return mTerm;
+    }
+
+    public void setTerm(String term) {
+        mTerm = term;
+    }
+
+    public RealmList<Bookmark> getBookmarks() {
+        return mBookmarks;
+    }
+
+    public void setBookmarks(RealmList<Bookmark> bookmarks) {
+        mBookmarks = bookmarks;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model;
+
+import io.realm.RealmObject;
+
+/**
+ * This class contains the state left by the last successful synchronization. It is used to know if
+ * an incremental synchronization is enough. It is stored in realm with the bookmarks, so it never
+ * outlives the data it describes.
+ */
+public class SyncWatermark extends RealmObject {
+
+    public static final String FIELD_NEWEST_DATE = "mNewestDate";
+    public static final String FIELD_NEWEST_ID = "mNewestId";
+    public static final String FIELD_CHECKSUM = "mChecksum";
+    public static final String FIELD_LAST_FULL_SYNC = "mLastFullSync";
+
+    private String mNewestDate;
+    private String mNewestId;
+    private long mChecksum;
+    private long mLastFullSync;
+
+    public SyncWatermark() {
+    }
+
+    /**
+     * Constructor.
+     * @param newestDate date of the newest bookmark seen (in Bookmark.DATE_FORMAT).
+     * @param newestId ID of the newest bookmark seen.
+     * @param checksum order independent checksum of stored bookmark IDs.
+     * @param lastFullSync time of last full synchronization in milliseconds.
+     */
+    public SyncWatermark(String newestDate, String newestId, long checksum, long lastFullSync) {
+        mNewestDate = newestDate;
+        mNewestId = newestId;
+        mChecksum = checksum;
+        mLastFullSync = lastFullSync;
+    }
+
+    public String getNewestDate() {
+        return mNewestDate;
+    }
+
+    public void setNewestDate(String newestDate) {
+        mNewestDate = newestDate;
+    }
+
+    public String getNewestId() {
+        return mNewestId;
+    }
+
+    public void setNewestId(String newestId) {
+        mNewestId = newestId;
+    }
+
+    public long getChecksum() {
+        return mChecksum;
+    }
+
+    public void setChecksum(long checksum) {
+        mChecksum = checksum;
+    }
+
+    public long getLastFullSync() {
+        return mLastFullSync;
+    }
+
+    public void setLastFullSync(long lastFullSync) {
+        mLastFullSync = lastFullSync;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import io.github.nfdz.savedio.R;
+
+/**
+ * This class contains constants and helpers of bookmark binary format.
+ * - Header: magic bytes, version byte and compression byte. It is never compressed.
+ * - Body (GZIP compressed or not): one record per bookmark that starts with a record tag, and an
+ *   end tag after the last one.
+ * - Bookmark record: url, title, notes and date strings, list reference, click counter and flags.
+ * - Strings are stored as a varint with the length plus one (zero means null) and UTF-8 bytes.
+ * - List names are stored in a dictionary that is built while writing: the reference is zero
+ *   when there is no list, the index plus one of a known list, or the next index plus one
+ *   followed by the name of a new list.
+ */
+class BookmarkBinaryFormat {
+
+    static final byte[] MAGIC = { 'S', 'V', 'P', 'P' };
+    static final int VERSION = 1;
+
+    static final int COMPRESSION_NONE = 0;
+    static final int COMPRESSION_GZIP = 1;
+
+    static final int TAG_END = 0;
+    static final int TAG_BOOKMARK = 1;
+
+    static final int FLAG_FAVORITE = 1;
+
+    private static final int MAX_STRING_BYTES = 1024 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private BookmarkBinaryFormat() {
+    }
+
+    /**
+     * @param header
+     * @return true if given bytes start with binary format magic bytes.
+     */
+    static boolean isMagic(byte[] header) {
+        if (header.length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException, SerializationException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new SerializationException(R.string.deserialize_binary_error);
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+        } else {
+            byte[] bytes = value.getBytes(UTF8);
+            writeVarInt(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException, SerializationException {
+        int length = readVarInt(in);
+        if (length == 0) return null;
+        length--;
+        if (length > MAX_STRING_BYTES) {
+            throw new SerializationException(R.string.deserialize_binary_error);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
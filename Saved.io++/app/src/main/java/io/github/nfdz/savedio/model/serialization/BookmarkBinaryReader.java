@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import io.github.nfdz.savedio.R;
+import io.github.nfdz.savedio.model.Bookmark;
+
+/**
+ * This class reads bookmarks in binary format in a streaming way.
+ */
+public class BookmarkBinaryReader implements BookmarkReader {
+
+    private final DataInputStream mIn;
+    private final List<String> mListDictionary = new ArrayList<>();
+    private boolean mFinished;
+
+    /**
+     * Constructor. It reads and checks format header.
+     * @param in
+     * @throws IOException
+     * @throws SerializationException if the header is not valid or version is not supported.
+     */
+    public BookmarkBinaryReader(InputStream in) throws IOException, SerializationException {
+        DataInputStream header = new DataInputStream(in);
+        byte[] magic = new byte[BookmarkBinaryFormat.MAGIC.length];
+        header.readFully(magic);
+        if (!BookmarkBinaryFormat.isMagic(magic)) {
+            throw new SerializationException(R.string.deserialize_binary_error);
+        }
+        if (header.readUnsignedByte() != BookmarkBinaryFormat.VERSION) {
+            throw new SerializationException(R.string.deserialize_version_error);
+        }
+        int compression = header.readUnsignedByte();
+        if (compression == BookmarkBinaryFormat.COMPRESSION_GZIP) {
+            mIn = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+        } else if (compression == BookmarkBinaryFormat.COMPRESSION_NONE) {
+            mIn = header;
+        } else {
+            throw new SerializationException(R.string.deserialize_version_error);
+        }
+    }
+
+    @Override
+    public Bookmark read() throws IOException, SerializationException {
+        if (mFinished) return null;
+        int tag = mIn.readUnsignedByte();
+        if (tag == BookmarkBinaryFormat.TAG_END) {
+            mFinished = true;
+            return null;
+        } else if (tag != BookmarkBinaryFormat.TAG_BOOKMARK) {
+            throw new SerializationException(R.string.deserialize_binary_error);
+        }
+        Bookmark bm = new Bookmark();
+        bm.setUrl(BookmarkBinaryFormat.readString(mIn));
+        bm.setTitle(BookmarkBinaryFormat.readString(mIn));
+        bm.setNotes(BookmarkBinaryFormat.readString(mIn));
+        bm.setDate(BookmarkBinaryFormat.readString(mIn));
+        bm.setListName(readList());
+        bm.setClickCounter(BookmarkBinaryFormat.readVarInt(mIn));
+        int flags = mIn.readUnsignedByte();
+        bm.setFavorite((flags & BookmarkBinaryFormat.FLAG_FAVORITE) != 0);
+        // mandatory field
+        if (bm.getUrl() == null) {
+            throw new SerializationException(R.string.deserialize_binary_error);
+        }
+        return bm;
+    }
+
+    private String readList() throws IOException, SerializationException {
+        int reference = BookmarkBinaryFormat.readVarInt(mIn);
+        if (reference == 0) return "";
+        int index = reference - 1;
+        if (index < mListDictionary.size()) {
+            return mListDictionary.get(index);
+        } else if (index == mListDictionary.size()) {
+            String listName = BookmarkBinaryFormat.readString(mIn);
+            mListDictionary.add(listName);
+            return listName;
+        } else {
+            throw new SerializationException(R.string.deserialize_binary_error);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
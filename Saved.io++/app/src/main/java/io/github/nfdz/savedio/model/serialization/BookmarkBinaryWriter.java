@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import android.text.TextUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import io.github.nfdz.savedio.model.Bookmark;
+
+/**
+ * This class writes bookmarks in binary format in a streaming way. Unlike JSON format, it keeps
+ * date, click counter and favorite flag of bookmarks.
+ */
+public class BookmarkBinaryWriter implements BookmarkWriter {
+
+    private final DataOutputStream mOut;
+    private final GZIPOutputStream mGzip;
+    private final Map<String, Integer> mListDictionary = new HashMap<>();
+
+    /**
+     * Constructor. It writes format header.
+     * @param out
+     * @param compress true to compress body with GZIP.
+     * @throws IOException
+     */
+    public BookmarkBinaryWriter(OutputStream out, boolean compress) throws IOException {
+        OutputStream buffered = new BufferedOutputStream(out);
+        buffered.write(BookmarkBinaryFormat.MAGIC);
+        buffered.write(BookmarkBinaryFormat.VERSION);
+        if (compress) {
+            buffered.write(BookmarkBinaryFormat.COMPRESSION_GZIP);
+            mGzip = new GZIPOutputStream(buffered);
+            mOut = new DataOutputStream(new BufferedOutputStream(mGzip));
+        } else {
+            buffered.write(BookmarkBinaryFormat.COMPRESSION_NONE);
+            mGzip = null;
+            mOut = new DataOutputStream(buffered);
+        }
+    }
+
+    @Override
+    public void write(Bookmark bm) throws IOException {
+        mOut.writeByte(BookmarkBinaryFormat.TAG_BOOKMARK);
+        BookmarkBinaryFormat.writeString(mOut, bm.getUrl());
+        BookmarkBinaryFormat.writeString(mOut, bm.getTitle());
+        BookmarkBinaryFormat.writeString(mOut, bm.getNotes());
+        BookmarkBinaryFormat.writeString(mOut, bm.getDate());
+        writeList(bm.getListName());
+        BookmarkBinaryFormat.writeVarInt(mOut, bm.getClickCounter());
+        mOut.writeByte(bm.isFavorite() ? BookmarkBinaryFormat.FLAG_FAVORITE : 0);
+    }
+
+    private void writeList(String listName) throws IOException {
+        if (TextUtils.isEmpty(listName)) {
+            BookmarkBinaryFormat.writeVarInt(mOut, 0);
+            return;
+        }
+        Integer index = mListDictionary.get(listName);
+        if (index != null) {
+            BookmarkBinaryFormat.writeVarInt(mOut, index + 1);
+        } else {
+            // new list: next index followed by its name
+            index = mListDictionary.size();
+            mListDictionary.put(listName, index);
+            BookmarkBinaryFormat.writeVarInt(mOut, index + 1);
+            BookmarkBinaryFormat.writeString(mOut, listName);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mOut.writeByte(BookmarkBinaryFormat.TAG_END);
+            mOut.flush();
+            if (mGzip != null) mGzip.finish();
+        } finally {
+            mOut.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import io.github.nfdz.savedio.R;
+import io.github.nfdz.savedio.model.Bookmark;
+
+/**
+ * This class reads a JSON array of bookmarks in a streaming way. Every element could be a JSON
+ * object or a string that contains a JSON object (legacy format).
+ */
+public class BookmarkJsonReader implements BookmarkReader {
+
+    private static final String CHARSET = "UTF-8";
+
+    private final JsonReader mReader;
+    private boolean mStarted;
+    private boolean mFinished;
+
+    public BookmarkJsonReader(InputStream in) throws IOException {
+        mReader = new JsonReader(new InputStreamReader(in, CHARSET));
+        mReader.setLenient(true);
+    }
+
+    @Override
+    public Bookmark read() throws IOException, SerializationException {
+        if (mFinished) return null;
+        try {
+            if (!mStarted) {
+                mReader.beginArray();
+                mStarted = true;
+            }
+            if (!mReader.hasNext()) {
+                mReader.endArray();
+                mFinished = true;
+                return null;
+            }
+            if (mReader.peek() == JsonToken.STRING) {
+                return BookmarkSerializer.deserializeBookmark(mReader.nextString());
+            } else {
+                return readObject();
+            }
+        } catch (IllegalStateException e) {
+            // unexpected token
+            throw new SerializationException(R.string.deserialize_json_array_error);
+        }
+    }
+
+    private Bookmark readObject() throws IOException, SerializationException {
+        Bookmark bm = new Bookmark();
+        bm.setTitle("");
+        bm.setListName("");
+        bm.setNotes("");
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            String name = mReader.nextName();
+            if (mReader.peek() == JsonToken.NULL) {
+                mReader.skipValue();
+            } else if (Bookmark.FIELD_TITLE.equals(name)) {
+                bm.setTitle(mReader.nextString());
+            } else if (Bookmark.FIELD_LIST.equals(name)) {
+                bm.setListName(mReader.nextString());
+            } else if (Bookmark.FIELD_URL.equals(name)) {
+                bm.setUrl(mReader.nextString());
+            } else if (Bookmark.FIELD_NOTE.equals(name)) {
+                bm.setNotes(mReader.nextString());
+            } else {
+                mReader.skipValue();
+            }
+        }
+        mReader.endObject();
+        // mandatory field
+        if (bm.getUrl() == null) {
+            throw new SerializationException(R.string.deserialize_json_error);
+        }
+        return bm;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
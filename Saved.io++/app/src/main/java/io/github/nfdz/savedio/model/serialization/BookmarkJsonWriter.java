@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import android.util.JsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+import io.github.nfdz.savedio.model.Bookmark;
+
+/**
+ * This class writes a JSON array of bookmark objects in a streaming way.
+ */
+public class BookmarkJsonWriter implements BookmarkWriter {
+
+    private static final String CHARSET = "UTF-8";
+
+    private final JsonWriter mWriter;
+
+    public BookmarkJsonWriter(OutputStream out) throws IOException {
+        mWriter = new JsonWriter(new OutputStreamWriter(new BufferedOutputStream(out), CHARSET));
+        mWriter.beginArray();
+    }
+
+    @Override
+    public void write(Bookmark bm) throws IOException {
+        mWriter.beginObject();
+        mWriter.name(Bookmark.FIELD_TITLE).value(bm.getTitle());
+        mWriter.name(Bookmark.FIELD_LIST).value(bm.getListName());
+        mWriter.name(Bookmark.FIELD_URL).value(bm.getUrl());
+        mWriter.name(Bookmark.FIELD_NOTE).value(bm.getNotes());
+        mWriter.endObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mWriter.endArray();
+        } finally {
+            mWriter.close();
+        }
+    }
+}
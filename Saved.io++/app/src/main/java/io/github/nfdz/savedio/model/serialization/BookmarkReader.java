@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import io.github.nfdz.savedio.model.Bookmark;
+
+/**
+ * This interface reads serialized bookmarks one by one from a stream, so it is not necessary to
+ * load all of them in memory.
+ */
+public interface BookmarkReader extends Closeable {
+
+    /**
+     * Reads next bookmark.
+     * @return Bookmark (it is not a realm object) or null if there are no more bookmarks.
+     * @throws IOException if there is any problem reading the stream.
+     * @throws SerializationException if the content is not well formed.
+     */
+    Bookmark read() throws IOException, SerializationException;
+}
@@ -3,19 +3,30 @@
  */
 package io.github.nfdz.savedio.model.serialization;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import io.github.nfdz.savedio.R;
 import io.github.nfdz.savedio.model.Bookmark;
 
-/** This class has methods to ease bookmark serialization. Serialization format is JSON. */
+/**
+ * This class has methods to ease bookmark serialization. Default serialization format is JSON, a
+ * list of bookmarks is an array of objects. Older versions stored every object as a string inside
+ * the array, readers support both of them. There is a compact binary format too, see
+ * BookmarkBinaryFormat.
+ */
 public class BookmarkSerializer {
 
+    // supported formats, they match export format preference values
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_BINARY = "binary";
+    public static final String FORMAT_BINARY_GZIP = "binary-gzip";
+
     /**
      * Serializes given bookmark.
      * @param bm
@@ -35,23 +46,6 @@ public class BookmarkSerializer {
         }
     }
 
-    /**
-     * Serializes given bookmark list.
-     * @param bookmarks
-     * @return String JSON array.
-     * @throws SerializationException
-     */
-    public static String serialize(List<Bookmark> bookmarks) throws SerializationException {
-        if (bookmarks.isEmpty()) {
-            throw new SerializationException(R.string.serialize_empty_error);
-        }
-        JSONArray array = new JSONArray();
-        for (Bookmark bm : bookmarks) {
-            array.put(serialize(bm));
-        }
-        return array.toString();
-    }
-
     /**
      * Deserializes given bookmark.
      * @param serializedBm
@@ -73,25 +67,45 @@ public class BookmarkSerializer {
     }
 
     /**
-     * Deserializes given bookmarks.
-     * @param serializedBms
-     * @return List of Bookmark (it is not a realm object)
+     * Creates a reader of serialized bookmarks. Format is detected with the first bytes of the
+     * stream, binary format starts with a magic header and JSON otherwise.
+     * @param in stream with serialized bookmarks.
+     * @return BookmarkReader
+     * @throws IOException
      * @throws SerializationException
      */
-    public static List<Bookmark> deserializeBookmarks(String serializedBms) throws SerializationException {
-        try {
-            List<Bookmark> bookmarks = new ArrayList<>();
-            JSONArray array = new JSONArray(serializedBms);
-            int length = array.length();
-            if (length <= 0) {
-                throw new SerializationException(R.string.deserialize_empty_error);
-            }
-            for (int i = 0; i < length; i++) {
-                bookmarks.add(deserializeBookmark(array.getString(i)));
-            }
-            return bookmarks;
-        } catch (JSONException e) {
-            throw new SerializationException(R.string.deserialize_json_array_error);
+    public static BookmarkReader newReader(InputStream in) throws IOException, SerializationException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        byte[] header = new byte[BookmarkBinaryFormat.MAGIC.length];
+        buffered.mark(header.length);
+        int read = 0;
+        while (read < header.length) {
+            int count = buffered.read(header, read, header.length - read);
+            if (count < 0) break;
+            read += count;
+        }
+        buffered.reset();
+        if (read == header.length && BookmarkBinaryFormat.isMagic(header)) {
+            return new BookmarkBinaryReader(buffered);
+        } else {
+            return new BookmarkJsonReader(buffered);
+        }
+    }
+
+    /**
+     * Creates a writer of serialized bookmarks.
+     * @param out stream where to write serialized bookmarks.
+     * @param format one of FORMAT_JSON, FORMAT_BINARY or FORMAT_BINARY_GZIP.
+     * @return BookmarkWriter
+     * @throws IOException
+     */
+    public static BookmarkWriter newWriter(OutputStream out, String format) throws IOException {
+        if (FORMAT_BINARY.equals(format)) {
+            return new BookmarkBinaryWriter(out, false);
+        } else if (FORMAT_BINARY_GZIP.equals(format)) {
+            return new BookmarkBinaryWriter(out, true);
+        } else {
+            return new BookmarkJsonWriter(out);
         }
     }
 }
@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.model.serialization;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import io.github.nfdz.savedio.model.Bookmark;
+
+/**
+ * This interface writes serialized bookmarks one by one to a stream, so it is not necessary to
+ * keep all of them in memory. Closing it finishes the serialization and closes the stream.
+ */
+public interface BookmarkWriter extends Closeable {
+
+    /**
+     * Writes given bookmark.
+     * @param bm
+     * @throws IOException if there is any problem writing the stream.
+     */
+    void write(Bookmark bm) throws IOException;
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.github.nfdz.savedio.R;
+import io.github.nfdz.savedio.sync.api.BookmarkAPI;
+import io.github.nfdz.savedio.sync.api.SavedioAPI;
+import retrofit2.Call;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * This class retrieves all bookmark pages from server keeping a bounded number of page requests
+ * in flight. Pages are delivered to the consumer in order as soon as they arrive, so they can be
+ * processed meanwhile next pages are being downloaded.
+ * Notes about saved.io API:
+ * - First page is 1 because 0 returns the same response.
+ * - It will not returns an empty response ever, it repeats the last page. So it has to check if
+ *   the last page is the same that the last one. A page with less bookmarks than the limit is
+ *   the last one too, so in that case it is not necessary to wait for the repeated one.
+ */
+public class BookmarksPageFetcher {
+
+    public static final int PAGE_LIMIT = 50;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 3;
+
+    private static final String NO_LIST = null;
+
+    /**
+     * The interface to be implemented to receive retrieved pages. It returns true to keep
+     * retrieving pages or false to stop.
+     */
+    public interface PageConsumer {
+        boolean onPage(int page, List<BookmarkAPI> bookmarks) throws SyncException;
+    }
+
+    private final Context mContext;
+    private final SavedioAPI mAPI;
+    private final String mDevKey;
+    private final String mUserKey;
+    private final int mMaxInFlight;
+
+    /**
+     * Constructor.
+     * @param context
+     * @param api
+     * @param devKey
+     * @param userKey
+     * @param maxInFlight maximum number of page requests performed at the same time.
+     */
+    public BookmarksPageFetcher(Context context,
+                                SavedioAPI api,
+                                String devKey,
+                                String userKey,
+                                int maxInFlight) {
+        mContext = context;
+        mAPI = api;
+        mDevKey = devKey;
+        mUserKey = userKey;
+        mMaxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Retrieves all pages and delivers them in order to the given consumer. When the end of
+     * bookmarks is detected or the consumer asks to stop, all outstanding page requests are
+     * cancelled.
+     * @param consumer
+     * @return number of retrieved bookmarks.
+     * @throws SyncException
+     */
+    public int fetchAll(PageConsumer consumer) throws SyncException {
+        ExecutorService executor = Executors.newFixedThreadPool(mMaxInFlight);
+        Deque<PageRequest> inFlight = new ArrayDeque<>();
+        int nextPage = 1;
+        int retrieved = 0;
+        String lastOneId = null;
+        try {
+            while (inFlight.size() < mMaxInFlight) {
+                inFlight.add(new PageRequest(executor, nextPage++));
+            }
+            while (!inFlight.isEmpty()) {
+                PageRequest request = inFlight.poll();
+                List<BookmarkAPI> bookmarks = request.await();
+                if (bookmarks == null || bookmarks.isEmpty()) break;
+                String newLastOneId = bookmarks.get(bookmarks.size() - 1).id;
+                if (lastOneId != null && lastOneId.equals(newLastOneId)) break;
+                Timber.d("Sync bookmarks - page=" + request.mPage + " - size=" + bookmarks.size());
+                boolean keepFetching = consumer.onPage(request.mPage, bookmarks);
+                retrieved += bookmarks.size();
+                lastOneId = newLastOneId;
+                if (!keepFetching || bookmarks.size() < PAGE_LIMIT) break;
+                inFlight.add(new PageRequest(executor, nextPage++));
+            }
+        } finally {
+            // stop all outstanding calls
+            for (PageRequest request : inFlight) {
+                request.cancel();
+            }
+            executor.shutdownNow();
+        }
+        return retrieved;
+    }
+
+    private class PageRequest implements Callable<Response<List<BookmarkAPI>>> {
+
+        private final int mPage;
+        private final Call<List<BookmarkAPI>> mCall;
+        private final Future<Response<List<BookmarkAPI>>> mFuture;
+
+        PageRequest(ExecutorService executor, int page) {
+            mPage = page;
+            mCall = mAPI.retrieveAllBookmarks(mDevKey, mUserKey, page, PAGE_LIMIT, NO_LIST);
+            mFuture = executor.submit(this);
+        }
+
+        @Override
+        public Response<List<BookmarkAPI>> call() throws IOException {
+            return mCall.execute();
+        }
+
+        List<BookmarkAPI> await() throws SyncException {
+            try {
+                Response<List<BookmarkAPI>> res = mFuture.get();
+                if (res.isSuccessful()) {
+                    return res.body();
+                } else {
+                    String error = res.raw().message();
+                    Timber.d("Sync bookmarks error (page=" + mPage + "): " + error);
+                    throw new SyncException(mContext.getString(R.string.sync_service_error));
+                }
+            } catch (ExecutionException e) {
+                Timber.d(e.getCause(), "Sync bookmarks error (page=" + mPage + ")");
+                throw new SyncException(mContext.getString(R.string.sync_network_error), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SyncException(mContext.getString(R.string.sync_network_error), e);
+            }
+        }
+
+        void cancel() {
+            mCall.cancel();
+            mFuture.cancel(true);
+        }
+    }
+}
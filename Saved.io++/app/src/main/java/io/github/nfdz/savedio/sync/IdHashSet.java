@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of bookmark IDs. It does not store ID strings, only their 64-bit hashes in a
+ * primitive open addressing table, so it needs 8-16 bytes per ID and produces no garbage while
+ * it is filled. Two different IDs with the same hash are considered the same one, with 64-bit
+ * hashes that is negligible for the number of bookmarks of any account.
+ */
+public class IdHashSet {
+
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 64;
+
+    private long[] mTable;
+    private int mSize;
+    private boolean mHasEmptyHash;
+
+    public IdHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     * @param expectedSize number of IDs that will be added.
+     */
+    public IdHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        mTable = new long[capacity];
+    }
+
+    /**
+     * Adds given ID to the set.
+     * @param id
+     * @return true if it was not contained yet.
+     */
+    public boolean add(String id) {
+        long hash = hash(id);
+        if (hash == EMPTY) {
+            if (mHasEmptyHash) return false;
+            mHasEmptyHash = true;
+            mSize++;
+            return true;
+        }
+        if ((mSize + 1) * 2 > mTable.length) grow();
+        if (insert(mTable, hash)) {
+            mSize++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param id
+     * @return true if given ID is contained in the set.
+     */
+    public boolean contains(String id) {
+        long hash = hash(id);
+        if (hash == EMPTY) return mHasEmptyHash;
+        int mask = mTable.length - 1;
+        int i = mix(hash) & mask;
+        while (mTable[i] != EMPTY) {
+            if (mTable[i] == hash) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mTable, EMPTY);
+        mSize = 0;
+        mHasEmptyHash = false;
+    }
+
+    private void grow() {
+        long[] table = new long[mTable.length * 2];
+        for (long hash : mTable) {
+            if (hash != EMPTY) insert(table, hash);
+        }
+        mTable = table;
+    }
+
+    private static boolean insert(long[] table, long hash) {
+        int mask = table.length - 1;
+        int i = mix(hash) & mask;
+        while (table[i] != EMPTY) {
+            if (table[i] == hash) return false;
+            i = (i + 1) & mask;
+        }
+        table[i] = hash;
+        return true;
+    }
+
+    private static int mix(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Computes 64-bit FNV-1a hash of given ID.
+     * @param id
+     * @return hash
+     */
+    public static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.text.TextUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.nfdz.savedio.data.Outbox;
+import io.github.nfdz.savedio.data.PreferencesUtils;
+import io.github.nfdz.savedio.data.RealmUtils;
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.PendingOperation;
+import io.github.nfdz.savedio.utils.TasksUtils;
+import io.realm.Realm;
+import timber.log.Timber;
+
+/**
+ * This class sends pending operations of the outbox to server (see Outbox), in the same order
+ * they were enqueued. saved.io API has not batch operations, so operations are sent one by one
+ * but results are stored in batches, one transaction per BATCH_SIZE operations.
+ * - It stops at first failure. Failed creations are never discarded, they are retried with
+ *   backoff (see SyncUtils). Failed deletions are discarded after MAX_ATTEMPTS, the bookmark
+ *   will be restored by next synchronization.
+ * - Creation is not idempotent, so the ID assigned by server is stored as soon as it is received
+ *   and only the retrieval of its date is retried.
+ * - Operations could be coalesced meanwhile they are being sent, so results of creations and
+ *   deletions are checked against the outbox before storing them.
+ */
+class OutboxDrainer {
+
+    private static final int BATCH_SIZE = 20;
+    private static final int MAX_DELETE_ATTEMPTS = 5;
+
+    /**
+     * Sends all pending operations synchronously.
+     * @param context
+     * @param realm it has to be initialized.
+     * @return true if outbox is empty or false if it has to be retried later.
+     */
+    static boolean drain(Context context, Realm realm) {
+        // nothing can be sent in offline mode
+        if (TextUtils.isEmpty(PreferencesUtils.getUserAPIKey(context))) return true;
+        List<PendingOperation> operations = realm.copyFromRealm(realm.where(PendingOperation.class)
+                .findAllSorted(PendingOperation.FIELD_TIME));
+        if (operations.isEmpty()) return true;
+        if (!isConnected(context)) {
+            Timber.d("Outbox drain postponed, there is no network.");
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        int sent = 0;
+        boolean failed = false;
+        for (int from = 0; from < operations.size() && !failed; from += BATCH_SIZE) {
+            List<PendingOperation> batch = operations.subList(from,
+                    Math.min(operations.size(), from + BATCH_SIZE));
+            List<PendingOperation> done = new ArrayList<>();
+            PendingOperation failedOperation = null;
+            for (PendingOperation operation : batch) {
+                try {
+                    if (operation.getType() == PendingOperation.TYPE_CREATE) {
+                        send(context, realm, operation);
+                    } else {
+                        TasksUtils.deleteRemoteBookmark(context, operation.getBookmarkId());
+                    }
+                    done.add(operation);
+                } catch (IOException e) {
+                    Timber.w(e, "There was an error sending pending operation of bookmark: " +
+                            operation.getBookmarkId());
+                    failedOperation = operation;
+                    failed = true;
+                    break;
+                }
+            }
+            store(realm, done, failedOperation);
+            sent += done.size();
+        }
+        Timber.i("Outbox drain - " + sent + "/" + operations.size() + " operations sent in " +
+                (System.currentTimeMillis() - start) + "ms");
+        return !failed;
+    }
+
+    /**
+     * Sends given creation and sets server ID and date to it.
+     * @param context
+     * @param realm
+     * @param operation unmanaged pending creation.
+     * @throws IOException
+     */
+    private static void send(Context context, Realm realm, PendingOperation operation) throws IOException {
+        String serverId = operation.getServerId();
+        if (serverId == null) {
+            Bookmark bookmark = new Bookmark();
+            bookmark.setUrl(operation.getUrl());
+            bookmark.setTitle(operation.getTitle());
+            bookmark.setListName(operation.getListName());
+            serverId = TasksUtils.sendRemoteBookmark(context, bookmark);
+            operation.setServerId(serverId);
+            storeServerId(realm, operation);
+        }
+        operation.setDate(TasksUtils.retrieveRemoteBookmarkDate(context, serverId));
+    }
+
+    private static void storeServerId(Realm realm, final PendingOperation operation) {
+        realm.executeTransaction(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                PendingOperation stored = findOperation(realm, operation.getBookmarkId());
+                if (stored != null) {
+                    stored.setServerId(operation.getServerId());
+                } else {
+                    // it was removed locally meanwhile it was being sent
+                    Outbox.enqueueDelete(realm, toServerBookmark(operation));
+                }
+            }
+        });
+    }
+
+    private static void store(Realm realm,
+                              final List<PendingOperation> done,
+                              final PendingOperation failedOperation) {
+        realm.executeTransaction(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                for (PendingOperation operation : done) {
+                    PendingOperation stored = findOperation(realm, operation.getBookmarkId());
+                    if (operation.getType() == PendingOperation.TYPE_CREATE) {
+                        if (stored == null) {
+                            // it was removed locally meanwhile it was being sent
+                            Outbox.enqueueDelete(realm, toServerBookmark(operation));
+                        } else {
+                            RealmUtils.replaceBookmarkId(realm,
+                                    operation.getBookmarkId(),
+                                    operation.getServerId(),
+                                    operation.getDate());
+                        }
+                    } else if (stored == null) {
+                        // it was restored locally (undo) meanwhile it was being deleted in server
+                        requeueCreate(realm, operation.getBookmarkId());
+                    }
+                    if (stored != null) stored.deleteFromRealm();
+                }
+                if (failedOperation != null) {
+                    PendingOperation operation = findOperation(realm, failedOperation.getBookmarkId());
+                    if (operation == null) return;
+                    int attempts = operation.getAttempts() + 1;
+                    if (operation.getType() == PendingOperation.TYPE_DELETE &&
+                            attempts >= MAX_DELETE_ATTEMPTS) {
+                        Timber.e("Pending deletion of bookmark discarded after " + attempts +
+                                " attempts: " + operation.getBookmarkId());
+                        operation.deleteFromRealm();
+                    } else {
+                        operation.setAttempts(attempts);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Enqueues again the creation of a bookmark that was deleted in server, with a new local ID.
+     * @param realm
+     * @param bookmarkId
+     */
+    private static void requeueCreate(Realm realm, String bookmarkId) {
+        Bookmark bookmark = realm.where(Bookmark.class)
+                .equalTo(Bookmark.FIELD_ID, bookmarkId)
+                .findFirst();
+        if (bookmark == null) return;
+        String localId = Outbox.newLocalId();
+        RealmUtils.replaceBookmarkId(realm, bookmarkId, localId, bookmark.getDate());
+        Bookmark restored = realm.where(Bookmark.class)
+                .equalTo(Bookmark.FIELD_ID, localId)
+                .findFirst();
+        Outbox.enqueueCreate(realm, restored);
+    }
+
+    private static PendingOperation findOperation(Realm realm, String bookmarkId) {
+        return realm.where(PendingOperation.class)
+                .equalTo(PendingOperation.FIELD_BOOKMARK_ID, bookmarkId)
+                .findFirst();
+    }
+
+    private static Bookmark toServerBookmark(PendingOperation operation) {
+        Bookmark bookmark = new Bookmark();
+        bookmark.setId(operation.getServerId());
+        bookmark.setUrl(operation.getUrl());
+        bookmark.setTitle(operation.getTitle());
+        bookmark.setListName(operation.getListName());
+        bookmark.setDate(operation.getDate());
+        return bookmark;
+    }
+
+    private static boolean isConnected(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+}
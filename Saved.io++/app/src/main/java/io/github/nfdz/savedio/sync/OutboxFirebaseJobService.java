@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import com.firebase.jobdispatcher.JobParameters;
+import com.firebase.jobdispatcher.JobService;
+
+/**
+ * Firebase job service implementation that retries to send the outbox when there is network.
+ */
+public class OutboxFirebaseJobService extends JobService {
+
+    @Override
+    public boolean onStartJob(JobParameters job) {
+        SyncUtils.startOutboxDrain(this);
+        return false;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters job) {
+        return false;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.nfdz.savedio.data.Outbox;
+import io.github.nfdz.savedio.data.SearchIndex;
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.SearchTerm;
+import io.github.nfdz.savedio.sync.api.BookmarkAPI;
+import io.github.nfdz.savedio.utils.URLUtils;
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * This class computes the differences between local bookmarks and remote ones. Local state is
+ * loaded only once in a hash-keyed snapshot so every remote bookmark is classified in constant time,
+ * instead of performing one realm query per remote bookmark.
+ * In streaming mode every remote page is stored as soon as it is added, so remote bookmark objects
+ * are never retained, only the compact set of seen IDs that is needed to compute removals at the end.
+ * In incremental mode (no full reconciliation) local bookmarks that were not seen are not removed,
+ * because only the newest pages are retrieved.
+ * Search index is maintained with every created, updated or removed bookmark.
+ * Bookmarks with pending operations in the outbox are skipped, local and remote ones, so pending
+ * creations are not removed and pending deletions are not created again. Bookmarks with local IDs
+ * are never removed, server does not know about them yet.
+ */
+public class SyncDiff {
+
+    private final Realm mRealm;
+    private final boolean mStreaming;
+    private final Map<String, Bookmark> mLocalBookmarks;
+    private final IdHashSet mSeenIds;
+    private final IdHashSet mChangedIds;
+    private final List<BookmarkAPI> mCreated;
+    private final List<BookmarkAPI> mUpdated;
+    private final Set<String> mCreatedOrigins;
+    private final Set<String> mPendingIds;
+    private int mRemovedCount;
+    private int mCreatedCount;
+    private int mUpdatedCount;
+    private long mLocalChecksum;
+    private long mSeenChecksum;
+    private long mCreatedChecksum;
+    private String mNewestDate;
+    private String mNewestId;
+    private boolean mFullReconciliation = true;
+
+    /**
+     * Constructor. It takes a snapshot of all stored bookmarks.
+     * @param realm it has to be initialized.
+     * @param streaming true to store remote bookmarks as soon as they are added.
+     * @param pendingIds IDs of bookmarks with pending operations (see Outbox).
+     */
+    public SyncDiff(Realm realm, boolean streaming, Set<String> pendingIds) {
+        mRealm = realm;
+        mStreaming = streaming;
+        mPendingIds = pendingIds;
+        RealmResults<Bookmark> localBookmarks = realm.where(Bookmark.class).findAll();
+        mLocalBookmarks = new HashMap<>(localBookmarks.size() * 2);
+        for (Bookmark bookmark : localBookmarks) {
+            if (mPendingIds.contains(bookmark.getId()) || Outbox.isLocalId(bookmark.getId())) continue;
+            mLocalBookmarks.put(bookmark.getId(), bookmark);
+            mLocalChecksum ^= IdHashSet.hash(bookmark.getId());
+        }
+        mSeenIds = new IdHashSet(localBookmarks.size());
+        mChangedIds = new IdHashSet();
+        mCreated = new ArrayList<>();
+        mUpdated = new ArrayList<>();
+        mCreatedOrigins = new HashSet<>();
+    }
+
+    /**
+     * Sets full reconciliation flag (true by default). It has to be true only if all remote
+     * bookmarks will be added, because local bookmarks that were not seen will be removed.
+     * @param fullReconciliation
+     */
+    public void setFullReconciliation(boolean fullReconciliation) {
+        mFullReconciliation = fullReconciliation;
+    }
+
+    /**
+     * Classifies given remote bookmarks as created, updated or unchanged ones. In streaming mode
+     * created and updated bookmarks are stored in its own transaction.
+     * @param remoteBookmarks
+     */
+    public void addRemote(List<BookmarkAPI> remoteBookmarks) {
+        for (BookmarkAPI bm : remoteBookmarks) {
+            // ignore repeated bookmarks and bookmarks with pending operations
+            if (mPendingIds.contains(bm.id) || !mSeenIds.add(bm.id)) continue;
+            mSeenChecksum ^= IdHashSet.hash(bm.id);
+            if (mNewestDate == null || (bm.date != null && bm.date.compareTo(mNewestDate) > 0)) {
+                mNewestDate = bm.date;
+                mNewestId = bm.id;
+            }
+            Bookmark bookmark = mLocalBookmarks.get(bm.id);
+            if (bookmark == null) {
+                mCreated.add(bm);
+            } else if (!isEqual(bookmark, bm)) {
+                mUpdated.add(bm);
+            }
+        }
+        if (mStreaming && (!mCreated.isEmpty() || !mUpdated.isEmpty())) {
+            mRealm.beginTransaction();
+            upsert(mRealm);
+            mRealm.commitTransaction();
+        }
+    }
+
+    /**
+     * Checks if given remote bookmarks contain something that is not stored yet. The date format
+     * of bookmarks makes possible to compare them as strings.
+     * @param remoteBookmarks
+     * @param watermarkDate date of the newest bookmark of last synchronization.
+     * @return true if there is any bookmark newer than given date or not stored yet.
+     */
+    public boolean containsNewer(List<BookmarkAPI> remoteBookmarks, String watermarkDate) {
+        for (BookmarkAPI bm : remoteBookmarks) {
+            if (mPendingIds.contains(bm.id)) continue;
+            if (!mLocalBookmarks.containsKey(bm.id) ||
+                    (bm.date != null && bm.date.compareTo(watermarkDate) > 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEqual(Bookmark bookmark, BookmarkAPI bm) {
+        return TextUtils.equals(bookmark.getTitle(), bm.title) &&
+                TextUtils.equals(bookmark.getDate(), bm.date) &&
+                TextUtils.equals(bookmark.getUrl(), bm.url) &&
+                TextUtils.equals(bookmark.getNotes(), bm.note);
+    }
+
+    /**
+     * Applies computed differences: removes local bookmarks not contained in remote server (only
+     * with full reconciliation), creates new ones and updates modified ones. It has to be invoked
+     * inside a transaction.
+     * @param realm it has to be the same instance used to create this object.
+     */
+    public void apply(Realm realm) {
+        // remove local bookmarks not contained in remote server
+        if (mFullReconciliation) {
+            for (Map.Entry<String, Bookmark> entry : mLocalBookmarks.entrySet()) {
+                if (!mSeenIds.contains(entry.getKey())) {
+                    entry.getValue().deleteFromRealm();
+                    mRemovedCount++;
+                }
+            }
+            // realm removes links of deleted bookmarks, so only empty terms have to be removed
+            if (mRemovedCount > 0) SearchIndex.pruneEmptyTerms(realm);
+        }
+        upsert(realm);
+        mLocalBookmarks.clear();
+    }
+
+    private void upsert(Realm realm) {
+        // create new bookmarks
+        Map<String, SearchTerm> termsCache = new HashMap<>();
+        for (BookmarkAPI bm : mCreated) {
+            Bookmark bookmark = realm.createObject(Bookmark.class, bm.id);
+            copyFields(bm, bookmark);
+            SearchIndex.index(realm, bookmark, termsCache);
+            mChangedIds.add(bm.id);
+            mCreatedChecksum ^= IdHashSet.hash(bm.id);
+            String origin = URLUtils.getOrigin(URLUtils.processURL(bm.url));
+            if (origin != null) mCreatedOrigins.add(origin);
+        }
+        mCreatedCount += mCreated.size();
+        mCreated.clear();
+
+        // update modified bookmarks
+        for (BookmarkAPI bm : mUpdated) {
+            Bookmark bookmark = mLocalBookmarks.get(bm.id);
+            copyFields(bm, bookmark);
+            // only terms that changed are updated, for example nothing if only date changed
+            SearchIndex.reindex(realm, bookmark, termsCache);
+            mChangedIds.add(bm.id);
+        }
+        mUpdatedCount += mUpdated.size();
+        mUpdated.clear();
+    }
+
+    private static void copyFields(BookmarkAPI bm, Bookmark bookmark) {
+        bookmark.setTitle(bm.title);
+        bookmark.setDate(bm.date);
+        bookmark.setUrl(bm.url);
+        bookmark.setNotes(bm.note);
+    }
+
+    /**
+     * @param bookmarkId
+     * @return true if given bookmark was created or updated when differences were applied.
+     */
+    public boolean isChanged(String bookmarkId) {
+        return mChangedIds.contains(bookmarkId);
+    }
+
+    /**
+     * @return distinct origins of created bookmarks (see URLUtils.getOrigin).
+     */
+    public Set<String> getCreatedOrigins() {
+        return mCreatedOrigins;
+    }
+
+    /**
+     * @return order independent checksum of stored bookmark IDs when this object was created.
+     */
+    public long getLocalChecksum() {
+        return mLocalChecksum;
+    }
+
+    /**
+     * @return order independent checksum of stored bookmark IDs after applying differences.
+     */
+    public long getResultChecksum() {
+        return mFullReconciliation ? mSeenChecksum : mLocalChecksum ^ mCreatedChecksum;
+    }
+
+    /**
+     * @return date of the newest remote bookmark or null if nothing was added.
+     */
+    public String getNewestDate() {
+        return mNewestDate;
+    }
+
+    /**
+     * @return ID of the newest remote bookmark or null if nothing was added.
+     */
+    public String getNewestId() {
+        return mNewestId;
+    }
+
+    public boolean hasChanges() {
+        return !mChangedIds.isEmpty();
+    }
+
+    public int getRemovedCount() {
+        return mRemovedCount;
+    }
+
+    public int getCreatedCount() {
+        return mCreatedCount;
+    }
+
+    public int getUpdatedCount() {
+        return mUpdatedCount;
+    }
+}
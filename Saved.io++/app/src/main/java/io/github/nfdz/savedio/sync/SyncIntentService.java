@@ -4,35 +4,43 @@
 package io.github.nfdz.savedio.sync;
 
 
+import android.app.ActivityManager;
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
 import android.support.annotation.Nullable;
+import android.support.v4.app.ActivityManagerCompat;
 import android.text.TextUtils;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import io.github.nfdz.savedio.BuildConfig;
 import io.github.nfdz.savedio.R;
+import io.github.nfdz.savedio.data.Outbox;
 import io.github.nfdz.savedio.data.PreferencesUtils;
 import io.github.nfdz.savedio.model.Bookmark;
 import io.github.nfdz.savedio.model.BookmarkList;
 import io.github.nfdz.savedio.model.SyncResult;
+import io.github.nfdz.savedio.model.SyncWatermark;
 import io.github.nfdz.savedio.sync.api.APIHelper;
 import io.github.nfdz.savedio.sync.api.BookmarkAPI;
+import io.github.nfdz.savedio.sync.api.LatencyInterceptor;
+import io.github.nfdz.savedio.utils.FaviconPrefetcher;
 import io.github.nfdz.savedio.utils.NotificationUtils;
 import io.github.nfdz.savedio.widget.WidgetUtils;
 import io.realm.Realm;
-import retrofit2.Call;
-import retrofit2.Response;
 import timber.log.Timber;
 
 public class SyncIntentService extends IntentService {
 
     public static final String SERVICE_NAME = "SyncIntentService";
 
+    /** Action to send pending operations of the outbox without synchronizing bookmarks. */
+    public static final String ACTION_DRAIN_OUTBOX = "io.github.nfdz.savedio.ACTION_DRAIN_OUTBOX";
+
     public SyncIntentService() {
         super(SERVICE_NAME);
     }
@@ -43,8 +51,16 @@ public class SyncIntentService extends IntentService {
         try {
             Realm.init(this);
             realm = Realm.getDefaultInstance();
+            // pending operations are sent before synchronizing, so server is up to date
+            if (!OutboxDrainer.drain(this, realm)) {
+                SyncUtils.scheduleOutboxRetry(this, Outbox.getMaxAttempts(realm));
+            }
+            if (intent != null && ACTION_DRAIN_OUTBOX.equals(intent.getAction())) {
+                WidgetUtils.updateFavWidgets(this);
+                return;
+            }
             syncBookmarks(this, realm);
-            // TODO improve it in order to update only if a favorite bookmark was updated or removed
+            // widgets are updated only if favorites changed
             WidgetUtils.updateFavWidgets(this);
         } catch (SyncException e) {
             realm.beginTransaction();
@@ -69,96 +85,49 @@ public class SyncIntentService extends IntentService {
             throw new SyncException(context.getString(R.string.sync_api_error));
         }
 
-        APIHelper helper = new APIHelper();
-        final int limit = 50;
-        final String noList = null;
-
-        // Notes:
-        // - First page is 1 because 0 returns the same response
-        // - It will not returns an empty response ever, it repeats the last page.
-        //   So it has to check if the last page is the same that the last one
-        int page = 1;
-        List<BookmarkAPI> allRetrievedBms = new ArrayList<>();
-        List<BookmarkAPI> retrievedBms;
-        String lastOneId = null;
-        boolean exit = false;
-        do {
-            Call<List<BookmarkAPI>> call = helper.getAPI().retrieveAllBookmarks(devKey, userKey, page, limit, noList);
-            try {
-                Response<List<BookmarkAPI>> res = call.execute();
-                if (res.isSuccessful()) {
-                    retrievedBms = res.body();
-                    if (!retrievedBms.isEmpty()) {
-                        String newLastOneId = retrievedBms.get(retrievedBms.size() - 1).id;
-                        if (lastOneId != null && lastOneId.equals(newLastOneId)) {
-                            exit = true;
-                        } else {
-                            Timber.d("Sync bookmarks - page=" + page + " - size=" + retrievedBms.size());
-                            page++;
-                            allRetrievedBms.addAll(retrievedBms);
-                            lastOneId = newLastOneId;
-                        }
-                    } else {
-                        exit = true;
-                    }
-                } else {
-                    String error = res.raw().message();
-                    Timber.d("Sync bookmarks error (page=" + page + "): " + error);
-                    throw new SyncException(context.getString(R.string.sync_service_error));
-                }
-            } catch (IOException e) {
-                Timber.d(e, "Sync bookmarks error (page=" + page + ")");
-                throw new SyncException(context.getString(R.string.sync_network_error), e);
+        // compute differences with local bookmarks as soon as each page arrives, low RAM devices
+        // store each page at once to avoid keeping remote bookmarks in memory
+        long syncStart = System.currentTimeMillis();
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean streaming = ActivityManagerCompat.isLowRamDevice(am);
+        // bookmarks with pending operations are skipped, server does not know about them yet
+        final SyncDiff diff = new SyncDiff(realm, streaming, Outbox.getPendingIds(realm));
+
+        // full reconciliation is performed periodically or if stored bookmarks changed since last
+        // synchronization, if not it is enough to retrieve bookmarks newer than the watermark
+        // watermark is copied because it is replaced at the end of the transaction
+        SyncWatermark storedWatermark = realm.where(SyncWatermark.class).findFirst();
+        final SyncWatermark watermark = storedWatermark == null ? null : realm.copyFromRealm(storedWatermark);
+        long fullSyncInterval = TimeUnit.DAYS.toMillis(PreferencesUtils.getFullSyncIntervalDays(context));
+        final boolean fullSync = watermark == null ||
+                watermark.getChecksum() != diff.getLocalChecksum() ||
+                syncStart - watermark.getLastFullSync() >= fullSyncInterval;
+        diff.setFullReconciliation(fullSync);
+
+        APIHelper helper = APIHelper.getInstance();
+        BookmarksPageFetcher fetcher = new BookmarksPageFetcher(context,
+                helper.getAPI(),
+                devKey,
+                userKey,
+                BookmarksPageFetcher.DEFAULT_MAX_IN_FLIGHT);
+        int retrieved = fetcher.fetchAll(new BookmarksPageFetcher.PageConsumer() {
+            @Override
+            public boolean onPage(int page, List<BookmarkAPI> bookmarks) {
+                // stop paging early when there is nothing newer than the watermark
+                boolean keepFetching = fullSync ||
+                        diff.containsNewer(bookmarks, watermark.getNewestDate());
+                diff.addRemote(bookmarks);
+                return keepFetching;
             }
-        } while(!exit);
-
-
-        List<String> allRetrievedBmsId = new ArrayList<>();
-        for (BookmarkAPI bm : allRetrievedBms) {
-            allRetrievedBmsId.add(bm.id);
-        }
+        });
 
         realm.beginTransaction();
 
-        // remove local bookmarks not contained in remote server
-        List<Bookmark> removedBookmarks = new ArrayList<>();
-        List<Bookmark> localBookmarks = realm.where(Bookmark.class).findAll();
-        for (Bookmark bookmark : localBookmarks) {
-            if (!allRetrievedBmsId.contains(bookmark.getId())) {
-                removedBookmarks.add(bookmark);
-                bookmark.deleteFromRealm();
-            }
-        }
-
-        // create or update bookmarks
-        List<Bookmark> createdBookmarks = new ArrayList<>();
-        List<Bookmark> updateBookmarks = new ArrayList<>();
-        for (BookmarkAPI bm : allRetrievedBms) {
-            Bookmark bookmark = realm.where(Bookmark.class)
-                    .equalTo(Bookmark.FIELD_ID, bm.id)
-                    .findFirst();
-            if (bookmark == null) {
-                // create a new bookmark
-                bookmark = realm.createObject(Bookmark.class, bm.id);
-                bookmark.setTitle(bm.title);
-                bookmark.setDate(bm.date);
-                bookmark.setUrl(bm.url);
-                bookmark.setNotes(bm.note);
-                createdBookmarks.add(bookmark);
-            } else {
-                boolean isEqual = bookmark.getTitle().equals(bm.title) &&
-                                  bookmark.getDate().equals(bm.date) &&
-                                  bookmark.getUrl().equals(bm.url) &&
-                                  bookmark.getNotes().equals(bm.note);
-                if (!isEqual) {
-                    bookmark.setTitle(bm.title);
-                    bookmark.setDate(bm.date);
-                    bookmark.setUrl(bm.url);
-                    bookmark.setNotes(bm.note);
-                    updateBookmarks.add(bookmark);
-                }
-            }
-        }
+        // remove, create and update bookmarks
+        diff.apply(realm);
+        Timber.d("Sync bookmarks - streaming=" + streaming + " - full=" + fullSync + " - " + retrieved +
+                " bookmarks retrieved and applied in " +
+                (System.currentTimeMillis() - syncStart) + "ms");
 
         // notify changes and purge empty lists
         List<String> listsToNotify = new ArrayList<>();
@@ -166,46 +135,66 @@ public class SyncIntentService extends IntentService {
         for (BookmarkList list : lists) {
             if (list.getBookmarks().isEmpty()) {
                 list.deleteFromRealm();
-            } else if (list.getNotifyFlag()) {
+            } else if (list.getNotifyFlag() && diff.hasChanges()) {
                 // check if it contains any new or updated bookmark
-                boolean notify = false;
-                for (Bookmark bookmark : createdBookmarks) {
-                    if (list.getBookmarks().contains(bookmark)) {
-                        notify = true;
+                for (Bookmark bookmark : list.getBookmarks()) {
+                    if (diff.isChanged(bookmark.getId())) {
+                        listsToNotify.add(list.getListName());
                         break;
                     }
                 }
-                if (!notify) {
-                    for (Bookmark bookmark : updateBookmarks) {
-                        if (list.getBookmarks().contains(bookmark)) {
-                            notify = true;
-                            break;
-                        }
-                    }
-                }
-                if (notify) listsToNotify.add(list.getListName());
             }
         }
         NotificationUtils.notifyListChanges(context, listsToNotify);
 
         // create summary
         String summary = String.format(context.getString(R.string.sync_summary_format),
-                removedBookmarks.size(),
-                createdBookmarks.size(),
-                updateBookmarks.size());
+                diff.getRemovedCount(),
+                diff.getCreatedCount(),
+                diff.getUpdatedCount());
 
         // save sync result
         SyncResult result = realm.where(SyncResult.class).findFirst();
         result.setSuccess(true);
         result.setMessage(summary);
 
+        // save watermark with the data it describes
+        long now = System.currentTimeMillis();
+        String newestDate = diff.getNewestDate();
+        String newestId = diff.getNewestId();
+        if (!fullSync && (newestDate == null || newestDate.compareTo(watermark.getNewestDate()) < 0)) {
+            newestDate = watermark.getNewestDate();
+            newestId = watermark.getNewestId();
+        }
+        if (newestDate != null) {
+            realm.delete(SyncWatermark.class);
+            realm.copyToRealm(new SyncWatermark(newestDate,
+                    newestId,
+                    diff.getResultChecksum(),
+                    fullSync ? now : watermark.getLastFullSync()));
+        }
+
         // commit data
         realm.commitTransaction();
 
         Timber.i("Bookmarks synchronization finished correctly. " + summary);
+        logLatencyStats(helper.getLatencyInterceptor());
+
+        // warm favicons of new bookmarks, so first scroll does not have to retrieve them
+        FaviconPrefetcher.prefetch(context, diff.getCreatedOrigins());
 
         // save sync time in preferences
-        long now = System.currentTimeMillis();
         PreferencesUtils.setLastSyncTime(context, now);
     }
+
+    /**
+     * Logs latency statistics of API calls since the process started, they help to tune the
+     * number of page requests in flight.
+     * @param interceptor
+     */
+    private static void logLatencyStats(LatencyInterceptor interceptor) {
+        for (Map.Entry<String, LatencyInterceptor.EndpointStats> entry : interceptor.getStats().entrySet()) {
+            Timber.d("API latency - " + entry.getKey() + " - " + entry.getValue());
+        }
+    }
 }
@@ -19,6 +19,7 @@ import com.firebase.jobdispatcher.Trigger;
 import java.util.concurrent.TimeUnit;
 
 import io.github.nfdz.savedio.Callbacks;
+import io.github.nfdz.savedio.data.Outbox;
 import io.github.nfdz.savedio.data.PreferencesUtils;
 import io.github.nfdz.savedio.model.SyncResult;
 import io.realm.Realm;
@@ -29,8 +30,11 @@ public class SyncUtils {
     public static final long SYNC_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
     public static final long SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(SYNC_INTERVAL_HOURS);
     public static final long SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    public static final long OUTBOX_RETRY_MIN_SECONDS = TimeUnit.MINUTES.toSeconds(1);
+    public static final long OUTBOX_RETRY_MAX_SECONDS = TimeUnit.HOURS.toSeconds(6);
 
     private static final String SYNC_TAG = "savediopp-sync";
+    private static final String OUTBOX_TAG = "savediopp-outbox";
 
     private static boolean sInitialized = false;
 
@@ -57,6 +61,9 @@ public class SyncUtils {
 
         scheduleFirebaseJobDispatcherSync(context);
 
+        // send operations left pending by previous executions
+        if (!Outbox.isEmpty(realm)) startOutboxDrain(context);
+
         // check if it is necessary to perform synchronization now
         PreferencesUtils.retrieveLastSyncTime(context, new Callbacks.FinishCallback<Long>() {
             @Override
@@ -81,6 +88,41 @@ public class SyncUtils {
         context.startService(intentToSync);
     }
 
+    /**
+     * Starts synchronization service to send pending operations of the outbox (see Outbox)
+     * without synchronizing bookmarks.
+     * @param context
+     */
+    public static void startOutboxDrain(@NonNull final Context context) {
+        Intent intentToDrain = new Intent(context, SyncIntentService.class);
+        intentToDrain.setAction(SyncIntentService.ACTION_DRAIN_OUTBOX);
+        context.startService(intentToDrain);
+    }
+
+    /**
+     * Schedules a job to send pending operations of the outbox when there is network. Delay is
+     * doubled with every failed attempt, from OUTBOX_RETRY_MIN_SECONDS to OUTBOX_RETRY_MAX_SECONDS.
+     * @param context
+     * @param attempts number of failed attempts.
+     */
+    static void scheduleOutboxRetry(@NonNull final Context context, int attempts) {
+        long delay = Math.min(OUTBOX_RETRY_MAX_SECONDS, OUTBOX_RETRY_MIN_SECONDS << Math.min(attempts, 16));
+        Driver driver = new GooglePlayDriver(context);
+        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
+
+        Job outboxJob = dispatcher.newJobBuilder()
+                .setService(OutboxFirebaseJobService.class)
+                .setTag(OUTBOX_TAG)
+                .setConstraints(Constraint.ON_ANY_NETWORK)
+                .setLifetime(Lifetime.FOREVER)
+                .setRecurring(false)
+                .setTrigger(Trigger.executionWindow((int) delay, (int) (delay + delay / 2)))
+                .setReplaceCurrent(true)
+                .build();
+
+        dispatcher.schedule(outboxJob);
+    }
+
     static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context) {
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
@@ -6,26 +6,64 @@ package io.github.nfdz.savedio.sync.api;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-import io.github.nfdz.savedio.sync.api.SavedioAPI;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
- * This class helps to manage retrofit API object.
+ * This class helps to manage retrofit API object. There is only one instance per process, so
+ * every call shares the same HTTP client with its connection pool and TLS sessions.
+ * Notes:
+ * - Idle connections are kept alive to reuse them in next calls (sync performs several calls).
+ * - HTTP client requests gzip responses and decompresses them transparently.
+ * - TLS sessions are cached by the SSL context of the client, so reusing it allows session
+ *   resumption instead of full handshakes.
  */
 public class APIHelper {
 
     private static final String BASE_URL = "https://devapi.saved.io/";
 
-    public final SavedioAPI mAPI;
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+
+    private static APIHelper sInstance;
+
+    private final OkHttpClient mClient;
+    private final LatencyInterceptor mLatencyInterceptor;
+    private final SavedioAPI mAPI;
 
-    public APIHelper() {
+    /**
+     * @return the process-wide instance.
+     */
+    synchronized public static APIHelper getInstance() {
+        if (sInstance == null) {
+            sInstance = new APIHelper();
+        }
+        return sInstance;
+    }
+
+    private APIHelper() {
         Gson gson = new GsonBuilder()
                 .setLenient()
                 .create();
 
+        mLatencyInterceptor = new LatencyInterceptor();
+        mClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .addInterceptor(mLatencyInterceptor)
+                .build();
+
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(BASE_URL)
+                .client(mClient)
                 .addConverterFactory(GsonConverterFactory.create(gson))
                 .build();
 
@@ -36,4 +74,12 @@ public class APIHelper {
         return mAPI;
     }
 
+    public OkHttpClient getHttpClient() {
+        return mClient;
+    }
+
+    public LatencyInterceptor getLatencyInterceptor() {
+        return mLatencyInterceptor;
+    }
+
 }
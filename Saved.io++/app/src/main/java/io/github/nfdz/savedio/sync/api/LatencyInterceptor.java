@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync.api;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * HTTP interceptor that records the latency of every API call grouped by endpoint. It does not log
+ * anything by itself, statistics are read and logged once per synchronization.
+ */
+public class LatencyInterceptor implements Interceptor {
+
+    private static final String ID_SEGMENT = "{id}";
+
+    private final Map<String, EndpointStats> mStats = new HashMap<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = getEndpoint(request);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Response response = chain.proceed(request);
+            success = response.isSuccessful();
+            return response;
+        } finally {
+            record(endpoint, (System.nanoTime() - start) / 1000000L, success);
+        }
+    }
+
+    /**
+     * @param request
+     * @return HTTP method and path of the request where ID segments are replaced by a placeholder.
+     */
+    private static String getEndpoint(Request request) {
+        StringBuilder endpoint = new StringBuilder(request.method()).append(' ');
+        List<String> segments = request.url().pathSegments();
+        for (String segment : segments) {
+            endpoint.append('/');
+            endpoint.append(containsDigit(segment) ? ID_SEGMENT : segment);
+        }
+        return endpoint.toString();
+    }
+
+    private static boolean containsDigit(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (Character.isDigit(segment.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    private synchronized void record(String endpoint, long elapsedMillis, boolean success) {
+        EndpointStats stats = mStats.get(endpoint);
+        if (stats == null) {
+            stats = new EndpointStats();
+            mStats.put(endpoint, stats);
+        }
+        stats.record(elapsedMillis, success);
+    }
+
+    /**
+     * @return a copy of the current statistics by endpoint.
+     */
+    public synchronized Map<String, EndpointStats> getStats() {
+        Map<String, EndpointStats> copy = new HashMap<>();
+        for (Map.Entry<String, EndpointStats> entry : mStats.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Latency statistics of an endpoint.
+     */
+    public static class EndpointStats {
+
+        private int mCalls;
+        private int mFailures;
+        private long mTotalMillis;
+        private long mMaxMillis;
+
+        void record(long elapsedMillis, boolean success) {
+            mCalls++;
+            if (!success) mFailures++;
+            mTotalMillis += elapsedMillis;
+            mMaxMillis = Math.max(mMaxMillis, elapsedMillis);
+        }
+
+        EndpointStats copy() {
+            EndpointStats copy = new EndpointStats();
+            copy.mCalls = mCalls;
+            copy.mFailures = mFailures;
+            copy.mTotalMillis = mTotalMillis;
+            copy.mMaxMillis = mMaxMillis;
+            return copy;
+        }
+
+        public int getCalls() {
+            return mCalls;
+        }
+
+        public int getFailures() {
+            return mFailures;
+        }
+
+        public long getAverageMillis() {
+            return mCalls == 0 ? 0 : mTotalMillis / mCalls;
+        }
+
+        public long getMaxMillis() {
+            return mMaxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + mCalls + " failures=" + mFailures +
+                    " avg=" + getAverageMillis() + "ms max=" + mMaxMillis + "ms";
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.utils;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import io.github.nfdz.savedio.data.Outbox;
+import io.github.nfdz.savedio.data.PreferencesUtils;
+import io.github.nfdz.savedio.data.RealmUtils;
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.sync.SyncUtils;
+import io.realm.Realm;
+import timber.log.Timber;
+
+/**
+ * This class imports big amounts of bookmarks. It has to be used from a background thread.
+ * - Bookmarks are stored in realm in chunks, one transaction per chunk.
+ * - In online mode, bookmarks are created in server by a bounded pool of workers. When all
+ *   workers are busy and there are too many pending bookmarks, submit method blocks until some of
+ *   them finish (backpressure).
+ * - Bookmarks that could not be created in server are stored with a local ID and their creation
+ *   is enqueued in the outbox, which is drained at the end (see Outbox).
+ * - Progress is notified every few bookmarks.
+ * - It is finished only once, even if finish is interrupted and invoked again.
+ */
+public class BulkImporter {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final int WORKERS = 4;
+    private static final int MAX_PENDING = WORKERS * 2;
+    private static final int PROGRESS_STEP = 25;
+
+    /**
+     * The interface to be implemented to receive import progress. It is invoked in the thread
+     * that uses the importer.
+     */
+    public interface ProgressListener {
+        void onProgress(int imported, int pending);
+    }
+
+    private final Context mContext;
+    private final Realm mRealm;
+    private final ProgressListener mListener;
+    private final boolean mOnline;
+    private final String mCurrentDate;
+    private final List<Bookmark> mChunk;
+    private final Queue<Bookmark> mCreated;
+    private final Queue<DeferredCreation> mDeferred;
+    private final List<Bookmark> mPendingChunk;
+    private final List<String> mPendingServerIds;
+    private final Set<String> mImportedOrigins;
+    private final ExecutorService mWorkers;
+    private final Semaphore mPendingPermits;
+    private int mImported;
+    private int mPendingCount;
+    private boolean mFinished;
+
+    /**
+     * Constructor.
+     * @param context
+     * @param realm it has to be initialized in the thread that uses the importer.
+     * @param listener to be notified, it could be null.
+     */
+    public BulkImporter(Context context, Realm realm, ProgressListener listener) {
+        mContext = context;
+        mRealm = realm;
+        mListener = listener;
+        mOnline = !TextUtils.isEmpty(PreferencesUtils.getUserAPIKey(context));
+        mCurrentDate = DateUtils.getCurrentDate();
+        mChunk = new ArrayList<>(CHUNK_SIZE);
+        mCreated = new ConcurrentLinkedQueue<>();
+        mDeferred = new ConcurrentLinkedQueue<>();
+        mPendingChunk = new ArrayList<>();
+        mPendingServerIds = new ArrayList<>();
+        mImportedOrigins = new HashSet<>();
+        mWorkers = mOnline ? Executors.newFixedThreadPool(WORKERS) : null;
+        mPendingPermits = new Semaphore(MAX_PENDING);
+    }
+
+    /**
+     * Imports given bookmark. In online mode it could block until there is room for it.
+     * @param bookmark unmanaged object with bookmark information.
+     * @throws InterruptedException
+     */
+    public void submit(Bookmark bookmark) throws InterruptedException {
+        if (mFinished) throw new IllegalStateException("Importer is already finished");
+        if (mOnline) {
+            createInServer(bookmark);
+            drainCreated();
+        } else {
+            bookmark.setId(UUID.randomUUID().toString());
+            // keep original date if it is known
+            if (TextUtils.isEmpty(bookmark.getDate())) bookmark.setDate(mCurrentDate);
+            addToChunk(bookmark);
+        }
+    }
+
+    /**
+     * Waits for pending bookmarks and stores everything. Bookmarks that could not be created in
+     * server are sent by the outbox later. If it is interrupted, bookmarks already processed are
+     * stored anyway. Next invocations do nothing.
+     * @return number of bookmarks whose creation is pending in the outbox.
+     * @throws InterruptedException
+     */
+    public int finish() throws InterruptedException {
+        if (mFinished) return mPendingCount;
+        mFinished = true;
+        try {
+            if (mOnline) awaitPending();
+        } finally {
+            if (mOnline) mWorkers.shutdownNow();
+            drainCreated();
+            flushChunk();
+            flushPendingChunk();
+            if (mPendingCount > 0) SyncUtils.startOutboxDrain(mContext);
+            notifyProgress();
+        }
+        return mPendingCount;
+    }
+
+    /**
+     * @return distinct origins of imported bookmarks (see URLUtils.getOrigin).
+     */
+    public Set<String> getImportedOrigins() {
+        return mImportedOrigins;
+    }
+
+    private void createInServer(final Bookmark bookmark) throws InterruptedException {
+        mPendingPermits.acquire();
+        mWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                String serverId = null;
+                try {
+                    serverId = TasksUtils.sendRemoteBookmark(mContext, bookmark);
+                    String date = TasksUtils.retrieveRemoteBookmarkDate(mContext, serverId);
+                    bookmark.setId(serverId);
+                    bookmark.setDate(date);
+                    mCreated.add(bookmark);
+                } catch (IOException e) {
+                    Timber.d(e, "There was an error importing bookmark: " + bookmark.getUrl());
+                    // creation is not idempotent, so server ID is kept if it was received
+                    mDeferred.add(new DeferredCreation(bookmark, serverId));
+                } finally {
+                    mPendingPermits.release();
+                }
+            }
+        });
+    }
+
+    private void awaitPending() throws InterruptedException {
+        mPendingPermits.acquire(MAX_PENDING);
+        mPendingPermits.release(MAX_PENDING);
+    }
+
+    private void drainCreated() {
+        Bookmark bookmark;
+        while ((bookmark = mCreated.poll()) != null) {
+            addToChunk(bookmark);
+        }
+        DeferredCreation deferred;
+        while ((deferred = mDeferred.poll()) != null) {
+            addToPendingChunk(deferred);
+        }
+    }
+
+    private void addToChunk(Bookmark bookmark) {
+        mChunk.add(bookmark);
+        addOrigin(bookmark);
+        mImported++;
+        if (mChunk.size() >= CHUNK_SIZE) flushChunk();
+        if ((mImported + mPendingCount) % PROGRESS_STEP == 0) notifyProgress();
+    }
+
+    private void addToPendingChunk(DeferredCreation deferred) {
+        Bookmark bookmark = deferred.mBookmark;
+        bookmark.setId(Outbox.newLocalId());
+        // keep original date if it is known until server one is retrieved
+        if (TextUtils.isEmpty(bookmark.getDate())) bookmark.setDate(mCurrentDate);
+        mPendingChunk.add(bookmark);
+        mPendingServerIds.add(deferred.mServerId);
+        addOrigin(bookmark);
+        mPendingCount++;
+        if (mPendingChunk.size() >= CHUNK_SIZE) flushPendingChunk();
+        if ((mImported + mPendingCount) % PROGRESS_STEP == 0) notifyProgress();
+    }
+
+    private void addOrigin(Bookmark bookmark) {
+        String origin = URLUtils.getOrigin(URLUtils.processURL(bookmark.getUrl()));
+        if (origin != null) mImportedOrigins.add(origin);
+    }
+
+    private void flushChunk() {
+        if (!mChunk.isEmpty()) {
+            RealmUtils.addBookmarks(mRealm, mChunk);
+            mChunk.clear();
+        }
+    }
+
+    private void flushPendingChunk() {
+        if (!mPendingChunk.isEmpty()) {
+            RealmUtils.addPendingBookmarks(mRealm, mPendingChunk, mPendingServerIds);
+            mPendingChunk.clear();
+            mPendingServerIds.clear();
+        }
+    }
+
+    private void notifyProgress() {
+        if (mListener != null) mListener.onProgress(mImported, mPendingCount);
+    }
+
+    /**
+     * Bookmark that could not be created in server and the ID assigned by server to it, if it was
+     * received.
+     */
+    private static class DeferredCreation {
+
+        private final Bookmark mBookmark;
+        private final String mServerId;
+
+        DeferredCreation(Bookmark bookmark, String serverId) {
+            mBookmark = bookmark;
+            mServerId = serverId;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.utils;
+
+import android.text.TextUtils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import io.github.nfdz.savedio.model.Bookmark;
+
+/**
+ * This class contains static methods to ease work with bookmark dates. Date formats are not
+ * thread safe and expensive to create, so there is one per thread and it is reused.
+ */
+public class DateUtils {
+
+    /** Timestamp of bookmarks without date or with an unknown date format. */
+    public static final long NO_TIMESTAMP = 0;
+
+    private static final ThreadLocal<SimpleDateFormat> sBookmarkDateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(Bookmark.DATE_FORMAT);
+        }
+    };
+
+    /**
+     * @param date in Bookmark.DATE_FORMAT, it could be null.
+     * @return epoch time in milliseconds or NO_TIMESTAMP if it could not be parsed.
+     */
+    public static long parseDate(String date) {
+        if (TextUtils.isEmpty(date)) return NO_TIMESTAMP;
+        try {
+            return sBookmarkDateFormat.get().parse(date).getTime();
+        } catch (ParseException e) {
+            return NO_TIMESTAMP;
+        }
+    }
+
+    /**
+     * @param timestamp epoch time in milliseconds.
+     * @return date in Bookmark.DATE_FORMAT.
+     */
+    public static String formatDate(long timestamp) {
+        return sBookmarkDateFormat.get().format(new Date(timestamp));
+    }
+
+    /**
+     * @return current date in Bookmark.DATE_FORMAT.
+     */
+    public static String getCurrentDate() {
+        return formatDate(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import io.github.nfdz.savedio.sync.IdHashSet;
+import io.github.nfdz.savedio.sync.api.APIHelper;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import timber.log.Timber;
+
+/**
+ * This class caches bookmark favicons by origin (protocol and host, see URLUtils.getOrigin), so all
+ * bookmarks of the same origin share the icon and it is retrieved only once, with the same protocol
+ * than the bookmark. There is only one instance per process.
+ * - Memory: LRU of decoded bitmaps bounded by size. Big icons are downsampled when they are
+ *   decoded, favicons are always shown small.
+ * - Disk: one file per origin in the cache directory. When it exceeds its maximum size, least
+ *   recently used files are removed.
+ * - Negative cache: origins without favicon are remembered (in memory and in disk) for a while, so
+ *   they are not requested again.
+ * - Simultaneous requests of the same origin are performed only once.
+ */
+public class FaviconCache {
+
+    private static final String DIR_NAME = "favicons";
+    private static final String MISSING_SUFFIX = ".none";
+    private static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+    private static final long TRIMMED_DISK_BYTES = MAX_DISK_BYTES * 3 / 4;
+    private static final int MAX_FAVICON_BYTES = 128 * 1024;
+    private static final int MAX_DECODED_SIZE_PX = 96;
+    private static final int MEMORY_HEAP_DIVIDER = 32;
+    private static final int MAX_MISSING_ORIGINS = 512;
+    private static final long MISSING_TTL_MILLIS = 24 * 60 * 60 * 1000;
+    private static final int WORKERS = 3;
+
+    private static FaviconCache sInstance;
+
+    private final File mDir;
+    private final LruCache<String, Bitmap> mMemory;
+    private final LruCache<String, Long> mMissing;
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler;
+    private final Map<String, Future<Bitmap>> mInFlight;
+    // it is only used in main thread
+    private final Map<String, List<WeakReference<ImageView>>> mPendingTargets;
+
+    /**
+     * @param context
+     * @return the process-wide instance.
+     */
+    synchronized public static FaviconCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FaviconCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private FaviconCache(Context context) {
+        mDir = new File(context.getCacheDir(), DIR_NAME);
+        int maxMemoryBytes = (int) (Runtime.getRuntime().maxMemory() / MEMORY_HEAP_DIVIDER);
+        mMemory = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String origin, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        mMissing = new LruCache<>(MAX_MISSING_ORIGINS);
+        mExecutor = Executors.newFixedThreadPool(WORKERS);
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mInFlight = new HashMap<>();
+        mPendingTargets = new HashMap<>();
+    }
+
+    /**
+     * Sets the favicon of given URL in given view. If it is not in memory, it sets the placeholder
+     * and it is loaded in background. It has to be invoked in main thread.
+     * @param url bookmark URL.
+     * @param view
+     * @param placeholder drawable to show meanwhile favicon is loading or if there is not favicon.
+     */
+    public void into(String url, ImageView view, Drawable placeholder) {
+        String origin = URLUtils.getOrigin(URLUtils.processURL(url));
+        view.setTag(origin);
+        Bitmap favicon = origin != null ? mMemory.get(origin) : null;
+        if (favicon != null) {
+            view.setImageBitmap(favicon);
+            return;
+        }
+        view.setImageDrawable(placeholder);
+        if (origin == null || isMissing(origin)) return;
+        List<WeakReference<ImageView>> targets = mPendingTargets.get(origin);
+        if (targets == null) {
+            targets = new ArrayList<>();
+            mPendingTargets.put(origin, targets);
+        }
+        targets.add(new WeakReference<>(view));
+        request(origin);
+    }
+
+    /**
+     * Retrieves the favicon of given URL synchronously. It has to be invoked in background thread.
+     * @param url bookmark URL.
+     * @return favicon or null if it does not exist or it could not be retrieved.
+     */
+    public Bitmap get(String url) {
+        String origin = URLUtils.getOrigin(URLUtils.processURL(url));
+        if (origin == null) return null;
+        Bitmap favicon = mMemory.get(origin);
+        if (favicon != null || isMissing(origin)) return favicon;
+        try {
+            return request(origin).get();
+        } catch (ExecutionException e) {
+            Timber.d(e.getCause(), "There was an error retrieving favicon of " + origin);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Requests the favicon of given origin if it is not cached in memory or known as missing, so it
+     * will be cached.
+     * @param origin
+     * @return future favicon or null if it does not need to be requested.
+     */
+    Future<Bitmap> prefetch(String origin) {
+        if (mMemory.get(origin) != null || isMissing(origin)) return null;
+        return request(origin);
+    }
+
+    private Future<Bitmap> request(final String origin) {
+        synchronized (mInFlight) {
+            Future<Bitmap> future = mInFlight.get(origin);
+            if (future == null) {
+                FutureTask<Bitmap> task = new FutureTask<>(new Callable<Bitmap>() {
+                    @Override
+                    public Bitmap call() {
+                        Bitmap favicon = null;
+                        try {
+                            favicon = load(origin);
+                            return favicon;
+                        } finally {
+                            synchronized (mInFlight) {
+                                mInFlight.remove(origin);
+                            }
+                            deliver(origin, favicon);
+                        }
+                    }
+                });
+                mInFlight.put(origin, task);
+                mExecutor.execute(task);
+                future = task;
+            }
+            return future;
+        }
+    }
+
+    private void deliver(final String origin, final Bitmap favicon) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                List<WeakReference<ImageView>> targets = mPendingTargets.remove(origin);
+                if (targets == null || favicon == null) return;
+                for (WeakReference<ImageView> target : targets) {
+                    ImageView view = target.get();
+                    // view could be recycled to show other bookmark
+                    if (view != null && origin.equals(view.getTag())) {
+                        view.setImageBitmap(favicon);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads favicon of given origin from disk or from network. It has to be invoked in background
+     * thread.
+     */
+    private Bitmap load(String origin) {
+        Bitmap favicon = loadFromDisk(origin);
+        if (favicon == null && !isMissing(origin)) {
+            try {
+                byte[] data = download(origin);
+                favicon = data != null ? decode(data) : null;
+                if (favicon != null) {
+                    saveToDisk(origin, data);
+                } else {
+                    markMissing(origin);
+                }
+            } catch (IOException e) {
+                // network problems are not cached
+                Timber.d(e, "There was an error downloading favicon of " + origin);
+            }
+        }
+        if (favicon != null) mMemory.put(origin, favicon);
+        return favicon;
+    }
+
+    private byte[] download(String origin) throws IOException {
+        Request request = new Request.Builder().url(URLUtils.getFaviconPath(origin)).build();
+        Response response = APIHelper.getInstance().getHttpClient().newCall(request).execute();
+        try {
+            if (!response.isSuccessful()) return null;
+            ResponseBody body = response.body();
+            if (body.contentLength() > MAX_FAVICON_BYTES) return null;
+            // content length is unknown (-1) with chunked responses, so it is read bounded
+            return readBounded(body.byteStream(), MAX_FAVICON_BYTES);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Reads given stream until its end or until it exceeds given size.
+     * @param in
+     * @param maxBytes
+     * @return read data or null if it is empty or it exceeds given size.
+     * @throws IOException
+     */
+    private static byte[] readBounded(InputStream in, int maxBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8 * 1024];
+        int total = 0;
+        int count;
+        // one extra byte is enough to know that it is too big
+        while (total <= maxBytes &&
+                (count = in.read(buffer, 0, Math.min(buffer.length, maxBytes + 1 - total))) >= 0) {
+            out.write(buffer, 0, count);
+            total += count;
+        }
+        return total > 0 && total <= maxBytes ? out.toByteArray() : null;
+    }
+
+    private boolean isMissing(String origin) {
+        Long missingTime = mMissing.get(origin);
+        if (missingTime != null) {
+            if (System.currentTimeMillis() - missingTime < MISSING_TTL_MILLIS) return true;
+            mMissing.remove(origin);
+        }
+        return false;
+    }
+
+    private File getFile(String origin, boolean missing) {
+        String name = Long.toHexString(IdHashSet.hash(origin));
+        return new File(mDir, missing ? name + MISSING_SUFFIX : name);
+    }
+
+    private Bitmap loadFromDisk(String origin) {
+        File missingFile = getFile(origin, true);
+        if (missingFile.exists()) {
+            long missingTime = missingFile.lastModified();
+            if (System.currentTimeMillis() - missingTime < MISSING_TTL_MILLIS) {
+                mMissing.put(origin, missingTime);
+                return null;
+            }
+            missingFile.delete();
+        }
+        File file = getFile(origin, false);
+        if (!file.exists()) return null;
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) break;
+                read += count;
+            }
+            Bitmap favicon = read == data.length ? decode(data) : null;
+            // keep track of usage for eviction
+            file.setLastModified(System.currentTimeMillis());
+            return favicon;
+        } catch (IOException e) {
+            Timber.d(e, "There was an error reading favicon of " + origin);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Decodes given favicon data downsampling it if it is bigger than MAX_DECODED_SIZE_PX.
+     * @param data
+     * @return bitmap or null if it could not be decoded.
+     */
+    private static Bitmap decode(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+        int sampleSize = 1;
+        int maxSide = Math.max(options.outWidth, options.outHeight);
+        while (maxSide / (sampleSize * 2) >= MAX_DECODED_SIZE_PX) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    private void saveToDisk(String origin, byte[] data) {
+        OutputStream out = null;
+        try {
+            if (!mDir.exists() && !mDir.mkdirs()) return;
+            out = new FileOutputStream(getFile(origin, false));
+            out.write(data);
+        } catch (IOException e) {
+            Timber.d(e, "There was an error writing favicon of " + origin);
+        } finally {
+            closeQuietly(out);
+        }
+        trimDisk();
+    }
+
+    private void markMissing(String origin) {
+        long now = System.currentTimeMillis();
+        mMissing.put(origin, now);
+        try {
+            File missingFile = getFile(origin, true);
+            if ((mDir.exists() || mDir.mkdirs()) && (missingFile.exists() || missingFile.createNewFile())) {
+                missingFile.setLastModified(now);
+            }
+        } catch (IOException e) {
+            Timber.d(e, "There was an error writing missing favicon of " + origin);
+        }
+    }
+
+    /**
+     * Removes least recently used files if disk cache exceeds its maximum size.
+     */
+    private synchronized void trimDisk() {
+        File[] files = mDir.listFiles();
+        if (files == null) return;
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_DISK_BYTES) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long lastModified1 = file1.lastModified();
+                long lastModified2 = file2.lastModified();
+                return lastModified1 < lastModified2 ? -1 : (lastModified1 == lastModified2 ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (size <= TRIMMED_DISK_BYTES) break;
+            long length = file.length();
+            if (file.delete()) size -= length;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // swallow
+            }
+        }
+    }
+}
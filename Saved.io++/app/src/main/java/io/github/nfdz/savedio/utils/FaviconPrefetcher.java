@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import timber.log.Timber;
+
+/**
+ * This class warms favicon cache with the origins of new bookmarks (after synchronization or import)
+ * in a background thread. It is only performed in unmetered networks and it keeps a bounded
+ * number of favicon requests in flight, so it does not compete with favicons requested by UI.
+ */
+public class FaviconPrefetcher {
+
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final int MAX_HOSTS = 200;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Prefetches favicons of given origins asynchronously.
+     * @param context
+     * @param origins distinct origins (see URLUtils.getOrigin).
+     */
+    public static void prefetch(Context context, Collection<String> origins) {
+        if (origins == null || origins.isEmpty()) return;
+        final Context appContext = context.getApplicationContext();
+        final List<String> originsToWarm = new ArrayList<>(origins);
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                warm(appContext, originsToWarm);
+            }
+        });
+    }
+
+    private static void warm(Context context, List<String> origins) {
+        if (!isUnmeteredNetwork(context)) {
+            Timber.d("Favicon prefetch skipped, network is not unmetered.");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        FaviconCache cache = FaviconCache.getInstance(context);
+        Deque<Future<Bitmap>> inFlight = new ArrayDeque<>();
+        int requested = 0;
+        int warmed = 0;
+        try {
+            for (String origin : origins) {
+                if (requested >= MAX_HOSTS) break;
+                Future<Bitmap> future = cache.prefetch(origin);
+                if (future == null) continue;
+                requested++;
+                inFlight.add(future);
+                if (inFlight.size() >= MAX_IN_FLIGHT) {
+                    if (await(inFlight.poll())) warmed++;
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                if (await(inFlight.poll())) warmed++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Timber.i("Favicon prefetch - " + warmed + "/" + requested + " origins warmed in " +
+                (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static boolean await(Future<Bitmap> future) throws InterruptedException {
+        try {
+            return future.get() != null;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    private static boolean isUnmeteredNetwork(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm.getActiveNetworkInfo();
+        return info != null && info.isConnected() && !ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+    }
+}
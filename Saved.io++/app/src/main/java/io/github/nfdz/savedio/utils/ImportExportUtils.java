@@ -14,22 +14,22 @@ import android.support.v4.app.Fragment;
 import android.support.v4.provider.DocumentFile;
 import android.widget.Toast;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
-import java.util.Scanner;
-import java.util.concurrent.atomic.AtomicInteger;
 
-import io.github.nfdz.savedio.Callbacks;
 import io.github.nfdz.savedio.R;
-import io.github.nfdz.savedio.data.RealmUtils;
+import io.github.nfdz.savedio.data.PreferencesUtils;
 import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.serialization.BookmarkReader;
 import io.github.nfdz.savedio.model.serialization.BookmarkSerializer;
+import io.github.nfdz.savedio.model.serialization.BookmarkWriter;
 import io.github.nfdz.savedio.model.serialization.SerializationException;
 import io.realm.Realm;
+import io.realm.RealmResults;
 import timber.log.Timber;
 
 public class ImportExportUtils {
@@ -37,7 +37,13 @@ public class ImportExportUtils {
     private static final int READ_REQUEST_CODE = 642;
     private static final int WRITE_REQUEST_CODE = 486;
     private static final String MIME_TYPE = "text/plain";
-    private static final String SUGGESTED_NAME_FORMAT = "Bookmarks-%s.savediopp";
+    private static final String BINARY_MIME_TYPE = "application/octet-stream";
+    private static final String IMPORT_MIME_TYPE = "*/*";
+    private static final String SUGGESTED_NAME_FORMAT = "Bookmarks-%s.%s";
+    // JSON keeps the extension of previous versions
+    private static final String JSON_EXTENSION = "savediopp";
+    private static final String BINARY_EXTENSION = "savedioppb";
+    private static final String BINARY_GZIP_EXTENSION = "savedioppz";
     private static final String DATE_FORMAT = "yyyy-MM-dd";
 
     /**
@@ -50,93 +56,106 @@ public class ImportExportUtils {
         Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
         // show only results that can be "opened", such as a file
         intent.addCategory(Intent.CATEGORY_OPENABLE);
-        // filter to show only plain text
-        intent.setType(MIME_TYPE);
+        // show any file because exported bookmarks could be plain text or binary
+        intent.setType(IMPORT_MIME_TYPE);
 
         fm.startActivityForResult(intent, READ_REQUEST_CODE);
     }
 
     /**
-     * This methods manage the result of an open document activity.
+     * This methods manage the result of an open document activity. Bookmarks are imported in
+     * background with a bulk importer and the progress is notified to user.
      * @param requestCode
      * @param resultCode
      * @param resultData
-     * @param realm
      * @param context
      * @return true if activity result was managed by this method, false if not.
      */
     public static boolean onImportActivityResult(int requestCode,
                                                  int resultCode,
                                                  Intent resultData,
-                                                 final Realm realm,
-                                                 final Context context) {
+                                                 Context context) {
         if (requestCode == READ_REQUEST_CODE) {
             // URI to user document is contained in the return intent
             if (resultCode == Activity.RESULT_OK && resultData != null && resultData.getData() != null) {
                 final Uri uri = resultData.getData();
-                new AsyncTask<Void, Void, Void>(){
-                    private List<Bookmark> bookmarks;
+                final Context appContext = context.getApplicationContext();
+                new AsyncTask<Void, Integer, Void>(){
+                    private int pending = -1;
                     private String error;
                     @Override
                     protected Void doInBackground(Void... params) {
                         InputStream in = null;
+                        BookmarkReader reader = null;
+                        Realm realm = null;
+                        BulkImporter importer = null;
                         try {
-                            DocumentFile file = DocumentFile.fromSingleUri(context, uri);
-                            in = context.getContentResolver().openInputStream(file.getUri());
-                            if (in.available() != 0) {
-                                String inputStreamString = new Scanner(in).useDelimiter("\\A").next();
-                                bookmarks = BookmarkSerializer.deserializeBookmarks(inputStreamString);;
-                            } else {
-                                error = context.getString(R.string.import_error_empty);
+                            DocumentFile file = DocumentFile.fromSingleUri(appContext, uri);
+                            in = appContext.getContentResolver().openInputStream(file.getUri());
+                            if (in.available() == 0) {
+                                error = appContext.getString(R.string.import_error_empty);
+                                return null;
                             }
+                            // bookmarks are read one by one and submitted to the importer
+                            reader = BookmarkSerializer.newReader(in);
+                            Bookmark bm = reader.read();
+                            if (bm == null) {
+                                error = appContext.getString(R.string.deserialize_empty_error);
+                                return null;
+                            }
+                            realm = Realm.getDefaultInstance();
+                            importer = new BulkImporter(appContext, realm, new BulkImporter.ProgressListener() {
+                                @Override
+                                public void onProgress(int imported, int pending) {
+                                    publishProgress(imported, pending);
+                                }
+                            });
+                            while (bm != null) {
+                                importer.submit(bm);
+                                bm = reader.read();
+                            }
+                            pending = importer.finish();
+                            // warm favicons of imported bookmarks, so first scroll does not have to retrieve them
+                            FaviconPrefetcher.prefetch(appContext, importer.getImportedOrigins());
                         } catch (IOException e) {
-                            error = context.getString(R.string.import_error_reading);
+                            error = appContext.getString(R.string.import_error_reading);
                         } catch (SerializationException e) {
-                            error = context.getString(e.getMessageId());
+                            error = appContext.getString(e.getMessageId());
+                        } catch (InterruptedException e) {
+                            Timber.d(e, "Import bookmarks was interrupted. ");
+                            error = appContext.getString(R.string.import_error_reading);
                         } finally {
-                            if (in != null) {
+                            // store bookmarks that were already submitted, it does nothing if
+                            // importer was already finished
+                            if (importer != null && pending < 0) {
                                 try {
-                                    in.close();
-                                } catch (IOException e) {
+                                    importer.finish();
+                                } catch (InterruptedException e) {
                                     // swallow
                                 }
                             }
+                            closeQuietly(reader);
+                            closeQuietly(in);
+                            if (realm != null) realm.close();
                         }
                         return null;
                     }
                     @Override
+                    protected void onProgressUpdate(Integer... progress) {
+                        NotificationUtils.notifyImportProgress(appContext, progress[0], progress[1]);
+                    }
+                    @Override
                     protected void onPostExecute(Void v) {
-                        if (bookmarks != null) {
-                            final int bookmarksToImport = bookmarks.size();
-                            final AtomicInteger counter = new AtomicInteger(0);
-                            final AtomicInteger successCounter = new AtomicInteger(0);
-                            for (Bookmark bm : bookmarks) {
-                                TasksUtils.createBookmark(context, realm, bm, new Callbacks.OperationCallback<Void>() {
-                                    @Override
-                                    public void onSuccess(Void result) {
-                                        successCounter.incrementAndGet();
-                                        finish();
-                                    }
-                                    @Override
-                                    public void onError(String msg, Throwable th) {
-                                        finish();
-                                    }
-                                    private void finish() {
-                                        if (counter.incrementAndGet() == bookmarksToImport) {
-                                            if (successCounter.get() == counter.get()) {
-                                                Toast.makeText(context, R.string.import_success, Toast.LENGTH_LONG).show();
-                                            } else {
-                                                Toast.makeText(context, R.string.import_success_incomplete, Toast.LENGTH_LONG).show();
-                                            }
-                                        }
-                                    }
-                                });
-                            }
+                        NotificationUtils.cancelImportProgress(appContext);
+                        if (pending == 0) {
+                            Toast.makeText(appContext, R.string.import_success, Toast.LENGTH_LONG).show();
+                        } else if (pending > 0) {
+                            Toast.makeText(appContext, R.string.import_success_pending, Toast.LENGTH_LONG).show();
                         } else {
-                            Toast.makeText(context, context.getString(R.string.import_error_format, error), Toast.LENGTH_LONG).show();
+                            Toast.makeText(appContext, appContext.getString(R.string.import_error_format, error), Toast.LENGTH_LONG).show();
                         }
                     }
-                }.execute();
+                }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
             } else {
                 Toast.makeText(context, R.string.file_error, Toast.LENGTH_LONG).show();
             }
@@ -157,74 +176,80 @@ public class ImportExportUtils {
         // show only results that can be "opened", such as a file
         intent.addCategory(Intent.CATEGORY_OPENABLE);
 
-        // create a file with plain text MIME type
-        intent.setType(MIME_TYPE);
+        // create a file with the MIME type of preferred export format
+        String format = PreferencesUtils.getExportFormat(fm.getContext());
+        intent.setType(BookmarkSerializer.FORMAT_JSON.equals(format) ? MIME_TYPE : BINARY_MIME_TYPE);
         SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
         String currentDate = sdf.format(new Date());
-        intent.putExtra(Intent.EXTRA_TITLE, String.format(SUGGESTED_NAME_FORMAT, currentDate));
+        intent.putExtra(Intent.EXTRA_TITLE, String.format(SUGGESTED_NAME_FORMAT,
+                currentDate,
+                getFileExtension(format)));
         fm.startActivityForResult(intent, WRITE_REQUEST_CODE);
     }
 
     /**
-     * This methods manage the result of an create document activity.
+     * This methods manage the result of an create document activity. Bookmarks are written in
+     * background one by one.
      * @param requestCode
      * @param resultCode
      * @param resultData
-     * @param realm
      * @param context
      * @return true if activity result was managed by this method, false if not.
      */
     public static boolean onExportActivityResult(int requestCode,
-                                                 final int resultCode,
+                                                 int resultCode,
                                                  Intent resultData,
-                                                 Realm realm,
-                                                 final Context context) {
+                                                 Context context) {
         if (requestCode == WRITE_REQUEST_CODE) {
             // URI to user document is contained in the return intent
             if (resultCode == Activity.RESULT_OK && resultData != null && resultData.getData() != null) {
                 final Uri uri = resultData.getData();
-                RealmUtils.getSerializedBookmarks(realm, context, new Callbacks.OperationCallback<String>() {
+                final Context appContext = context.getApplicationContext();
+                new AsyncTask<Void, Void, Void>(){
+                    private boolean result = false;
+                    private String error;
                     @Override
-                    public void onSuccess(final String serialized) {
-                        // store it in the file
-                        new AsyncTask<Void, Void, Void>(){
-                            private boolean result = false;
-                            @Override
-                            protected Void doInBackground(Void... params) {
-                                OutputStream out = null;
-                                try {
-                                    DocumentFile newFile = DocumentFile.fromSingleUri(context, uri);
-                                    out = context.getContentResolver().openOutputStream(newFile.getUri());
-                                    out.write(serialized.getBytes());
-                                    result = true;
-                                } catch (IOException e) {
-                                    Timber.d(e, "There was an error writing file where to export bookmarks. ");
-                                } finally {
-                                    if (out != null) {
-                                        try {
-                                            out.close();
-                                        } catch (IOException e) {
-                                            // swallow
-                                        }
-                                    }
-                                }
+                    protected Void doInBackground(Void... params) {
+                        Realm realm = null;
+                        OutputStream out = null;
+                        BookmarkWriter writer = null;
+                        try {
+                            realm = Realm.getDefaultInstance();
+                            RealmResults<Bookmark> bookmarks = realm.where(Bookmark.class).findAll();
+                            if (bookmarks.isEmpty()) {
+                                error = appContext.getString(R.string.serialize_empty_error);
                                 return null;
                             }
-                            @Override
-                            protected void onPostExecute(Void v) {
-                                if (result) {
-                                    Toast.makeText(context, R.string.export_success, Toast.LENGTH_LONG).show();
-                                } else {
-                                    Toast.makeText(context, R.string.export_error_writing, Toast.LENGTH_LONG).show();
-                                }
+                            // bookmarks are written one by one in the file
+                            DocumentFile newFile = DocumentFile.fromSingleUri(appContext, uri);
+                            out = appContext.getContentResolver().openOutputStream(newFile.getUri());
+                            writer = BookmarkSerializer.newWriter(out, PreferencesUtils.getExportFormat(appContext));
+                            for (Bookmark bm : bookmarks) {
+                                writer.write(bm);
                             }
-                        }.execute();
+                            writer.close();
+                            writer = null;
+                            result = true;
+                        } catch (IOException e) {
+                            Timber.d(e, "There was an error writing file where to export bookmarks. ");
+                        } finally {
+                            closeQuietly(writer);
+                            closeQuietly(out);
+                            if (realm != null) realm.close();
+                        }
+                        return null;
                     }
                     @Override
-                    public void onError(String msg, Throwable th) {
-                        Toast.makeText(context, context.getString(R.string.export_error_format, msg), Toast.LENGTH_LONG).show();
+                    protected void onPostExecute(Void v) {
+                        if (result) {
+                            Toast.makeText(appContext, R.string.export_success, Toast.LENGTH_LONG).show();
+                        } else if (error != null) {
+                            Toast.makeText(appContext, appContext.getString(R.string.export_error_format, error), Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(appContext, R.string.export_error_writing, Toast.LENGTH_LONG).show();
+                        }
                     }
-                });
+                }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
             } else {
                 Toast.makeText(context, R.string.file_error, Toast.LENGTH_LONG).show();
             }
@@ -234,4 +259,28 @@ public class ImportExportUtils {
         }
     }
 
+    /**
+     * @param format export format (see BookmarkSerializer).
+     * @return file extension of given format.
+     */
+    private static String getFileExtension(String format) {
+        if (BookmarkSerializer.FORMAT_BINARY.equals(format)) {
+            return BINARY_EXTENSION;
+        } else if (BookmarkSerializer.FORMAT_BINARY_GZIP.equals(format)) {
+            return BINARY_GZIP_EXTENSION;
+        } else {
+            return JSON_EXTENSION;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // swallow
+            }
+        }
+    }
+
 }
@@ -19,6 +19,7 @@ import io.github.nfdz.savedio.R;
 public class NotificationUtils {
 
     private static final int BOOKMARK_LIST_NOTIFICATION_ID = 2468;
+    private static final int IMPORT_NOTIFICATION_ID = 1357;
 
     /**
      * Notifies to user one notification with information about updates in given lists.
@@ -63,4 +64,40 @@ public class NotificationUtils {
 
         notificationManager.notify(BOOKMARK_LIST_NOTIFICATION_ID, notificationBuilder.build());
     }
+
+    /**
+     * Notifies to user the progress of an import operation with an ongoing notification.
+     * @param context
+     * @param imported number of imported bookmarks.
+     * @param pending number of imported bookmarks that will be sent to server later.
+     */
+    public static void notifyImportProgress(Context context, int imported, int pending) {
+        String text = String.format(context.getString(R.string.notification_import_progress_format), imported);
+        if (pending > 0) {
+            text += " " + String.format(context.getString(R.string.notification_import_pending_format), pending);
+        }
+        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context)
+                .setColor(ContextCompat.getColor(context, R.color.colorPrimary))
+                .setSmallIcon(R.drawable.ic_logo_launcher)
+                .setContentTitle(context.getString(R.string.notification_import_title))
+                .setContentText(text)
+                .setProgress(0, 0, true)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true);
+
+        NotificationManager notificationManager = (NotificationManager)
+                context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        notificationManager.notify(IMPORT_NOTIFICATION_ID, notificationBuilder.build());
+    }
+
+    /**
+     * Cancels import progress notification.
+     * @param context
+     */
+    public static void cancelImportProgress(Context context) {
+        NotificationManager notificationManager = (NotificationManager)
+                context.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.cancel(IMPORT_NOTIFICATION_ID);
+    }
 }
@@ -5,19 +5,18 @@ package io.github.nfdz.savedio.utils;
 
 
 import android.content.Context;
-import android.os.AsyncTask;
 import android.text.TextUtils;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.UUID;
 
 import io.github.nfdz.savedio.BuildConfig;
 import io.github.nfdz.savedio.Callbacks;
+import io.github.nfdz.savedio.data.Outbox;
 import io.github.nfdz.savedio.data.PreferencesUtils;
 import io.github.nfdz.savedio.data.RealmUtils;
 import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.sync.SyncUtils;
 import io.github.nfdz.savedio.sync.api.APIHelper;
 import io.github.nfdz.savedio.sync.api.BookmarkAPI;
 import io.github.nfdz.savedio.sync.api.CreateBookmarkResponse;
@@ -32,90 +31,129 @@ public class TasksUtils {
 
     /**
      * This method creates a new bookmark. It manages all related thing like send to server or
-     * store in persistence.
+     * store in persistence. In online mode it is stored at once with a local ID and its creation
+     * is sent to server in background (see Outbox).
      * @param context
      * @param realm it has to be initialized.
      * @param bookmark unmanaged object with bookmark information (it should not have ID or date
-     *                 because it is the server that assigns it).
+     *                 because they are assigned here).
      * @param callback to be notified.
      */
     public static void createBookmark(final Context context,
                                       final Realm realm,
                                       final Bookmark bookmark,
                                       final Callbacks.OperationCallback<Void> callback) {
+        // set date and id (server will assign its own ones when it receives it)
+        bookmark.setDate(DateUtils.getCurrentDate());
         if (!TextUtils.isEmpty(PreferencesUtils.getUserAPIKey(context))) {
-            // create bookmark in server
-            new AsyncTask<Void, Void, Void>() {
-                private String bookmarkId;
-                private String bookmarkDate;
-                private String errorMsg;
-                private Throwable errorTh;
-
+            bookmark.setId(Outbox.newLocalId());
+            // store it in persistence and send it to server
+            RealmUtils.addBookmark(realm, bookmark, true, new Callbacks.OperationCallback<Void>() {
                 @Override
-                protected Void doInBackground(Void... params) {
-                    APIHelper helper = new APIHelper();
-                    String devKey = BuildConfig.SAVEDIO_API_DEV_KEY;
-                    String userKey = PreferencesUtils.getUserAPIKey(context);
-                    String list = bookmark.getListName();
-                    Call<CreateBookmarkResponse> createCall = helper.getAPI().createBookmark(devKey,
-                            userKey,
-                            bookmark.getUrl(),
-                            bookmark.getTitle(),
-                            TextUtils.isEmpty(list) ? null : list);
-
-                    try {
-                        Response<CreateBookmarkResponse> createRes = createCall.execute();
-                        if (createRes.isSuccessful()) {
-                            String bmId = createRes.body().id;
-                            Call<BookmarkAPI> bmCall = helper.getAPI().retrieveSingleBookmark(
-                                    bmId,
-                                    devKey,
-                                    userKey);
-                            Response<BookmarkAPI> bmRes = bmCall.execute();
-                            if (bmRes.isSuccessful()) {
-                                bookmarkId = bmId;
-                                bookmarkDate = bmRes.body().date;
-                            } else {
-                                errorMsg = bmRes.raw().message();
-                            }
-                        } else {
-                            errorMsg = createRes.raw().message();
-                        }
-                    } catch (IOException e) {
-                        errorMsg = e.getMessage();
-                        errorTh = e;
-                    }
-                    return null;
+                public void onSuccess(Void v) {
+                    SyncUtils.startOutboxDrain(context);
+                    callback.onSuccess(v);
                 }
-
                 @Override
-                protected void onPostExecute(Void v) {
-                    if (!TextUtils.isEmpty(bookmarkId) &&
-                            !TextUtils.isEmpty(bookmarkDate)) {
-                        // set id and date
-                        bookmark.setId(bookmarkId);
-                        bookmark.setDate(bookmarkDate);
-                        // store it in persistence
-                        RealmUtils.addBookmark(realm, bookmark, callback);
-                    } else {
-                        callback.onError(errorMsg, errorTh);
-                    }
+                public void onError(String msg, Throwable th) {
+                    callback.onError(msg, th);
                 }
-            }.execute();
+            });
         } else {
-            // set id and date
-            SimpleDateFormat sdf = new SimpleDateFormat(Bookmark.DATE_FORMAT);
-            String currentDate = sdf.format(new Date());
             bookmark.setId(UUID.randomUUID().toString());
-            bookmark.setDate(currentDate);
             // store it in persistence
-            RealmUtils.addBookmark(realm, bookmark, callback);
+            RealmUtils.addBookmark(realm, bookmark, false, callback);
+        }
+    }
+
+    /**
+     * This method creates given bookmark in server in a synchronous way. When it finishes
+     * successfully, bookmark ID and date are set with the ones assigned by server.
+     * @param context
+     * @param bookmark unmanaged object with bookmark information.
+     * @throws IOException if there is any network or service problem.
+     */
+    public static void createRemoteBookmark(Context context, Bookmark bookmark) throws IOException {
+        String bmId = sendRemoteBookmark(context, bookmark);
+        String bmDate = retrieveRemoteBookmarkDate(context, bmId);
+        // set id and date
+        bookmark.setId(bmId);
+        bookmark.setDate(bmDate);
+    }
+
+    /**
+     * This method sends given bookmark to server in a synchronous way. It is not idempotent, every
+     * invocation creates a new bookmark in server.
+     * @param context
+     * @param bookmark unmanaged object with bookmark information.
+     * @return ID assigned by server.
+     * @throws IOException if there is any network or service problem.
+     */
+    public static String sendRemoteBookmark(Context context, Bookmark bookmark) throws IOException {
+        APIHelper helper = APIHelper.getInstance();
+        String devKey = BuildConfig.SAVEDIO_API_DEV_KEY;
+        String userKey = PreferencesUtils.getUserAPIKey(context);
+        String list = bookmark.getListName();
+        Call<CreateBookmarkResponse> createCall = helper.getAPI().createBookmark(devKey,
+                userKey,
+                bookmark.getUrl(),
+                bookmark.getTitle(),
+                TextUtils.isEmpty(list) ? null : list);
+        Response<CreateBookmarkResponse> createRes = createCall.execute();
+        if (!createRes.isSuccessful()) {
+            throw new IOException(createRes.raw().message());
+        }
+        String bmId = createRes.body().id;
+        if (TextUtils.isEmpty(bmId)) {
+            throw new IOException("Server response does not contain bookmark ID.");
+        }
+        return bmId;
+    }
+
+    /**
+     * This method retrieves the date assigned by server to given bookmark in a synchronous way.
+     * @param context
+     * @param bookmarkId ID assigned by server.
+     * @return bookmark date.
+     * @throws IOException if there is any network or service problem.
+     */
+    public static String retrieveRemoteBookmarkDate(Context context, String bookmarkId) throws IOException {
+        APIHelper helper = APIHelper.getInstance();
+        String devKey = BuildConfig.SAVEDIO_API_DEV_KEY;
+        String userKey = PreferencesUtils.getUserAPIKey(context);
+        Call<BookmarkAPI> bmCall = helper.getAPI().retrieveSingleBookmark(bookmarkId, devKey, userKey);
+        Response<BookmarkAPI> bmRes = bmCall.execute();
+        if (!bmRes.isSuccessful()) {
+            throw new IOException(bmRes.raw().message());
+        }
+        String bmDate = bmRes.body().date;
+        if (TextUtils.isEmpty(bmDate)) {
+            throw new IOException("Server response does not contain bookmark date.");
+        }
+        return bmDate;
+    }
+
+    /**
+     * This method removes given bookmark in server in a synchronous way.
+     * @param context
+     * @param bookmarkId
+     * @throws IOException if there is any network or service problem.
+     */
+    public static void deleteRemoteBookmark(Context context, String bookmarkId) throws IOException {
+        APIHelper helper = APIHelper.getInstance();
+        String devKey = BuildConfig.SAVEDIO_API_DEV_KEY;
+        String userKey = PreferencesUtils.getUserAPIKey(context);
+        Call<Void> call = helper.getAPI().deleteBookmark(devKey, userKey, bookmarkId);
+        Response<Void> res = call.execute();
+        if (!res.isSuccessful()) {
+            throw new IOException(res.raw().message());
         }
     }
 
     /**
      * This method removes a bookmark with given ID. It manages all related thing like remove in
-     * server or persistence.
+     * server or persistence. In online mode it is removed at once and its deletion is sent to
+     * server in background (see Outbox).
      * @param context
      * @param realm it has to be initialized.
      * @param bookmarkId ID of the bookmark that will be removed.
@@ -126,45 +164,20 @@ public class TasksUtils {
                                       final String bookmarkId,
                                       final Callbacks.OperationCallback<Bookmark> callback) {
         if (!TextUtils.isEmpty(PreferencesUtils.getUserAPIKey(context))) {
-            // remove bookmark in server
-            new AsyncTask<Void, Void, Void>() {
-                private boolean success;
-                private String errorMsg;
-                private Throwable errorTh;
-
+            // remove it in persistence and send its deletion to server
+            RealmUtils.removeBookmark(realm, bookmarkId, true, new Callbacks.OperationCallback<Bookmark>() {
                 @Override
-                protected Void doInBackground(Void... params) {
-                    APIHelper helper = new APIHelper();
-                    String devKey = BuildConfig.SAVEDIO_API_DEV_KEY;
-                    String userKey = PreferencesUtils.getUserAPIKey(context);
-                    Call<Void> call = helper.getAPI().deleteBookmark(devKey,
-                            userKey,
-                            bookmarkId);
-
-                    try {
-                        Response<Void> res = call.execute();
-                        success = res.isSuccessful();
-                        if (!success) {
-                            errorMsg = res.raw().message();
-                        }
-                    } catch (IOException e) {
-                        errorMsg = e.getMessage();
-                        errorTh = e;
-                    }
-                    return null;
+                public void onSuccess(Bookmark removed) {
+                    SyncUtils.startOutboxDrain(context);
+                    callback.onSuccess(removed);
                 }
-
                 @Override
-                protected void onPostExecute(Void v) {
-                    if (success) {
-                        RealmUtils.removeBookmark(realm, bookmarkId, callback);
-                    } else {
-                        callback.onError(errorMsg, errorTh);
-                    }
+                public void onError(String msg, Throwable th) {
+                    callback.onError(msg, th);
                 }
-            }.execute();
+            });
         } else {
-            RealmUtils.removeBookmark(realm, bookmarkId, callback);
+            RealmUtils.removeBookmark(realm, bookmarkId, false, callback);
         }
     }
 }
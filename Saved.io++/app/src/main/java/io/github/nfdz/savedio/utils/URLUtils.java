@@ -7,6 +7,7 @@ import android.text.TextUtils;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Locale;
 
 public class URLUtils {
 
@@ -46,4 +47,25 @@ public class URLUtils {
         }
         return faviconPath;
     }
+
+    /**
+     * Extracts the origin (protocol and host) of given URL. The protocol is kept so resources of
+     * https URLs are never retrieved with plain http.
+     * @param rawUrl path.
+     * @return origin in lower case (for example, https://example.com) or null if it is not a valid
+     * http or https URL.
+     */
+    public static String getOrigin(String rawUrl) {
+        try {
+            URL url = new URL(rawUrl);
+            String protocol = url.getProtocol().toLowerCase(Locale.US);
+            String host = url.getHost();
+            if (TextUtils.isEmpty(host) || !(protocol.equals("http") || protocol.equals("https"))) {
+                return null;
+            }
+            return protocol + PROTOCOL_SEPARATOR + host.toLowerCase(Locale.US);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.widget;
+
+import android.content.Context;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import io.github.nfdz.savedio.model.Bookmark;
+
+/**
+ * Snapshot of favorite bookmarks shown in widgets, already sorted. It is written every time
+ * favorites change and widgets read it mapping the file in memory, so they do not have to
+ * open realm or read preferences. Only ID, title and URL of bookmarks are stored.
+ * File format (big endian):
+ * - Header: magic (int), version (int) and number of bookmarks (int).
+ * - Offset table: file offset of every bookmark record (int).
+ * - Records: ID, title and URL. Every string is its UTF-8 length (int, -1 if null) and its bytes.
+ */
+class FavoritesSnapshot {
+
+    private static final String FILE_NAME = "widget-favorites.snapshot";
+    private static final int MAGIC = 0x53565746; // "SVWF"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int NULL_LENGTH = -1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int FIELD_ID = 0;
+    private static final int FIELD_TITLE = 1;
+    private static final int FIELD_URL = 2;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    private FavoritesSnapshot(ByteBuffer buffer, int count) {
+        mBuffer = buffer;
+        mCount = count;
+    }
+
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Writes the snapshot of given bookmarks atomically.
+     * @param file
+     * @param bookmarks in the order they are shown.
+     * @throws IOException
+     */
+    static void write(File file, List<Bookmark> bookmarks) throws IOException {
+        int count = bookmarks.size();
+        byte[][] strings = new byte[count * 3][];
+        int offset = HEADER_BYTES + count * 4;
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            Bookmark bookmark = bookmarks.get(i);
+            offsets[i] = offset;
+            strings[i * 3 + FIELD_ID] = encode(bookmark.getId());
+            strings[i * 3 + FIELD_TITLE] = encode(bookmark.getTitle());
+            strings[i * 3 + FIELD_URL] = encode(bookmark.getUrl());
+            for (int field = 0; field < 3; field++) {
+                byte[] string = strings[i * 3 + field];
+                offset += 4 + (string == null ? 0 : string.length);
+            }
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpFile));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            for (int recordOffset : offsets) {
+                out.writeInt(recordOffset);
+            }
+            for (byte[] string : strings) {
+                if (string == null) {
+                    out.writeInt(NULL_LENGTH);
+                } else {
+                    out.writeInt(string.length);
+                    out.write(string);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Widget snapshot could not be replaced.");
+        }
+    }
+
+    /**
+     * Maps given snapshot file in memory.
+     * @param file
+     * @return snapshot or null if it does not exist or it is not valid.
+     * @throws IOException
+     */
+    static FavoritesSnapshot read(File file) throws IOException {
+        if (!file.exists()) return null;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping is still valid after closing the file
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            return new FavoritesSnapshot(buffer, buffer.getInt(8));
+        } finally {
+            raf.close();
+        }
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    String getId(int position) {
+        return getString(position, FIELD_ID);
+    }
+
+    String getTitle(int position) {
+        return getString(position, FIELD_TITLE);
+    }
+
+    String getUrl(int position) {
+        return getString(position, FIELD_URL);
+    }
+
+    private String getString(int position, int field) {
+        int offset = mBuffer.getInt(HEADER_BYTES + position * 4);
+        for (int i = 0; i < field; i++) {
+            int length = mBuffer.getInt(offset);
+            offset += 4 + Math.max(0, length);
+        }
+        int length = mBuffer.getInt(offset);
+        if (length == NULL_LENGTH) return null;
+        byte[] bytes = new byte[length];
+        ByteBuffer string = mBuffer.duplicate();
+        string.position(offset + 4);
+        string.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static byte[] encode(String string) {
+        return string == null ? null : string.getBytes(UTF_8);
+    }
+}
@@ -13,61 +13,30 @@ import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.squareup.picasso.Picasso;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.io.File;
 
 import io.github.nfdz.savedio.R;
-import io.github.nfdz.savedio.data.PreferencesUtils;
-import io.github.nfdz.savedio.model.Bookmark;
-import io.github.nfdz.savedio.model.BookmarkDateComparator;
-import io.github.nfdz.savedio.model.BookmarkDateLastComparator;
-import io.github.nfdz.savedio.model.BookmarkTitleComparator;
 import io.github.nfdz.savedio.utils.URLUtils;
-import io.realm.Realm;
-import io.realm.RealmResults;
 import timber.log.Timber;
 
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class FavoritesWidgetRemoteViewsService extends RemoteViewsService {
 
-    private List<Bookmark> getData() {
-        Realm realm = null;
+    /**
+     * @return snapshot of favorites or null if there is any error.
+     */
+    private FavoritesSnapshot getData() {
         try {
-            Realm.init(this);
-            realm = Realm.getDefaultInstance();
-
-            // query data
-            RealmResults<Bookmark> result = realm.where(Bookmark.class)
-                    .equalTo(Bookmark.FIELD_FAVORITE, true)
-                    .findAll();
-
-            // get preferred sort
-            Comparator<Bookmark> comparator;
-            String sort = PreferencesUtils.getPreferredSort(this);
-            if (getString(R.string.pref_sort_date_last_key).equals(sort)) {
-                comparator = new BookmarkDateLastComparator();
-            } else if (getString(R.string.pref_sort_date_old_key).equals(sort)) {
-                comparator = new BookmarkDateComparator();
-            } else {
-                comparator = new BookmarkTitleComparator();
-            }
-
-            List<Bookmark> data = new ArrayList<>();
-            for (Bookmark bm : result) {
-                data.add(realm.copyFromRealm(bm));
+            File snapshotFile = FavoritesSnapshot.getFile(this);
+            FavoritesSnapshot snapshot = FavoritesSnapshot.read(snapshotFile);
+            if (snapshot == null) {
+                // it has not been written yet or it is not valid
+                WidgetUtils.writeFavoritesSnapshot(this, true);
+                snapshot = FavoritesSnapshot.read(snapshotFile);
             }
-            Collections.sort(data, comparator);
-            data = Collections.unmodifiableList(data);
-            return data;
+            return snapshot;
         } catch (Exception e) {
             Timber.e(e, "There was an error retrieving data for widget.");
-        } finally {
-            if (realm != null) realm.close();
         }
         return null;
     }
@@ -76,23 +45,27 @@ public class FavoritesWidgetRemoteViewsService extends RemoteViewsService {
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
 
-            private List<Bookmark> data = null;
+            private FavoritesSnapshot data = null;
+            private WidgetIconLoader icons = null;
 
             @Override
             public void onCreate() {
-                // nothing to do
+                icons = new WidgetIconLoader(FavoritesWidgetRemoteViewsService.this);
             }
 
             @Override
             public void onDataSetChanged() {
                 final long identityToken = Binder.clearCallingIdentity();
                 data = getData();
+                // load icons in advance, so rows are created without blocking
+                icons.load(data);
                 Binder.restoreCallingIdentity(identityToken);
             }
 
             @Override
             public void onDestroy() {
                 data = null;
+                icons.release();
             }
 
             @Override
@@ -106,20 +79,10 @@ public class FavoritesWidgetRemoteViewsService extends RemoteViewsService {
                     return null;
                 }
                 RemoteViews views = new RemoteViews(getPackageName(), R.layout.widget_favorites_list_item);
-                Bookmark bookmark = data.get(position);
-                String faviconPath = URLUtils.getFaviconPath(bookmark.getUrl());
-                Bitmap favicon = null;
-                if (faviconPath != null) {
-                    try {
-                        favicon = Picasso.with(FavoritesWidgetRemoteViewsService.this)
-                                .load(faviconPath)
-                                .get();
-                        views.setImageViewBitmap(R.id.widget_iv_bookmark_item_favicon, favicon);
-                    } catch (IOException e) {
-                        // swallow
-                    }
-                }
-                if (favicon == null) {
+                Bitmap favicon = icons.getIcon(position);
+                if (favicon != null) {
+                    views.setImageViewBitmap(R.id.widget_iv_bookmark_item_favicon, favicon);
+                } else {
                     // use bitmap only if it is under 21
                     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
                         views.setImageViewResource(R.id.widget_iv_bookmark_item_favicon, R.drawable.art_no_favicon_png);
@@ -128,9 +91,9 @@ public class FavoritesWidgetRemoteViewsService extends RemoteViewsService {
                     }
                 }
 
-                views.setTextViewText(R.id.widget_tv_bookmark_item_name, bookmark.getTitle());
+                views.setTextViewText(R.id.widget_tv_bookmark_item_name, data.getTitle(position));
 
-                String url = URLUtils.processURL(bookmark.getUrl());
+                String url = URLUtils.processURL(data.getUrl(position));
                 final Intent fillInIntent = new Intent();
                 fillInIntent.setData(Uri.parse(url));
                 views.setOnClickFillInIntent(R.id.widget_fav_list_item, fillInIntent);
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.nfdz.savedio.R;
+import io.github.nfdz.savedio.utils.FaviconCache;
+import io.github.nfdz.savedio.utils.URLUtils;
+
+/**
+ * This class loads favicons of widget rows. Remote views ship their bitmaps to the widget host,
+ * so they have to be small and there is a limited amount of them:
+ * - Icons are loaded in batch when data changes, so rows are created without blocking.
+ * - Icons are scaled to the size of the row icon, and rows of the same origin share the icon.
+ * - Icon bitmaps are pooled and reused in next loads.
+ * - Bytes of decoded icons are limited by a budget. Once it is spent no more icons are decoded,
+ *   but rows whose origin already has an icon still share it.
+ */
+class WidgetIconLoader {
+
+    private static final int MAX_BYTES_PER_REFRESH = 256 * 1024;
+
+    private final Context mContext;
+    private final int mIconSize;
+    private final Paint mPaint;
+    private final Rect mIconRect;
+    private final Deque<Bitmap> mPool;
+    private final List<Bitmap> mInUse;
+    private Bitmap[] mIcons;
+
+    WidgetIconLoader(Context context) {
+        mContext = context;
+        mIconSize = Math.max(1, context.getResources().getDimensionPixelSize(R.dimen.favicon_size));
+        mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+        mIconRect = new Rect(0, 0, mIconSize, mIconSize);
+        mPool = new ArrayDeque<>();
+        mInUse = new ArrayList<>();
+        mIcons = new Bitmap[0];
+    }
+
+    /**
+     * Loads icons of given favorites. It blocks until they are loaded, so it has to be invoked in
+     * background thread (for example, when widget data changes).
+     * @param snapshot it could be null.
+     */
+    synchronized void load(FavoritesSnapshot snapshot) {
+        // icons of previous load are not shown anymore
+        mPool.addAll(mInUse);
+        mInUse.clear();
+        int count = snapshot == null ? 0 : snapshot.size();
+        mIcons = new Bitmap[count];
+        int usedBytes = 0;
+        boolean budgetSpent = false;
+        FaviconCache cache = FaviconCache.getInstance(mContext);
+        Map<String, Bitmap> iconsByOrigin = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String url = snapshot.getUrl(i);
+            String origin = URLUtils.getOrigin(URLUtils.processURL(url));
+            if (origin == null) continue;
+            if (iconsByOrigin.containsKey(origin)) {
+                mIcons[i] = iconsByOrigin.get(origin);
+                continue;
+            }
+            if (budgetSpent) continue;
+            Bitmap favicon = cache.get(url);
+            Bitmap icon = favicon != null ? scale(favicon) : null;
+            if (icon != null) {
+                if (usedBytes + icon.getByteCount() > MAX_BYTES_PER_REFRESH) {
+                    recycle(icon);
+                    budgetSpent = true;
+                    continue;
+                }
+                usedBytes += icon.getByteCount();
+            }
+            iconsByOrigin.put(origin, icon);
+            mIcons[i] = icon;
+        }
+    }
+
+    /**
+     * @param position
+     * @return loaded icon of given row or null if it has not icon.
+     */
+    synchronized Bitmap getIcon(int position) {
+        return position >= 0 && position < mIcons.length ? mIcons[position] : null;
+    }
+
+    /**
+     * Releases all icons.
+     */
+    synchronized void release() {
+        mPool.clear();
+        mInUse.clear();
+        mIcons = new Bitmap[0];
+    }
+
+    private Bitmap scale(Bitmap favicon) {
+        Bitmap icon = mPool.poll();
+        if (icon == null) {
+            icon = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        } else {
+            icon.eraseColor(Color.TRANSPARENT);
+        }
+        new Canvas(icon).drawBitmap(favicon, null, mIconRect, mPaint);
+        mInUse.add(icon);
+        return icon;
+    }
+
+    private void recycle(Bitmap icon) {
+        mInUse.remove(icon);
+        mPool.add(icon);
+    }
+}
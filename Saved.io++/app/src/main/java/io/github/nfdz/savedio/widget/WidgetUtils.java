@@ -7,13 +7,115 @@ package io.github.nfdz.savedio.widget;
 import android.content.Context;
 import android.content.Intent;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.github.nfdz.savedio.data.PreferencesUtils;
+import io.github.nfdz.savedio.model.Bookmark;
+import io.github.nfdz.savedio.model.BookmarkSort;
+import io.github.nfdz.savedio.sync.IdHashSet;
+import io.realm.Realm;
+import io.realm.RealmResults;
+import timber.log.Timber;
+
+/**
+ * This class contains static methods to ease work with widgets.
+ * Favorites widgets are updated only if the fingerprint of favorite bookmarks (IDs, titles, URLs
+ * and order) is different than the one of the last update, so writes that do not modify what
+ * widgets show do not make them refresh. When it changes, a snapshot of favorites is written
+ * (see FavoritesSnapshot) and widgets read it instead of realm.
+ * The check opens realm and queries favorites, so it is always performed in a background thread
+ * and consecutive requests are coalesced while they are waiting.
+ */
 public class WidgetUtils {
 
     public static final String ACTION_FAV_DATA_UPDATED = "io.github.nfdz.savedio.ACTION_FAV_DATA_UPDATED";
 
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final AtomicBoolean sUpdatePending = new AtomicBoolean(false);
+
+    /**
+     * Updates favorites widgets asynchronously if favorite bookmarks changed since last update.
+     * It could be invoked from any thread, it does not block.
+     * @param context
+     */
     public static void updateFavWidgets(Context context) {
+        // a pending update will see the changes of this one
+        if (!sUpdatePending.compareAndSet(false, true)) return;
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sUpdatePending.set(false);
+                checkFavWidgets(appContext);
+            }
+        });
+    }
+
+    private static void checkFavWidgets(Context context) {
+        if (!writeFavoritesSnapshot(context, false)) {
+            Timber.d("Favorites did not change, widgets are not updated.");
+            return;
+        }
         // setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_FAV_DATA_UPDATED).setPackage(context.getPackageName());
         context.sendBroadcast(dataUpdatedIntent);
     }
+
+    /**
+     * Writes the snapshot of favorite bookmarks if they changed since last snapshot. It blocks, so
+     * it has to be invoked in a background thread.
+     * @param context
+     * @param force true to write it even if favorites did not change.
+     * @return true if snapshot was written.
+     */
+    synchronized static boolean writeFavoritesSnapshot(Context context, boolean force) {
+        File snapshotFile = FavoritesSnapshot.getFile(context);
+        Realm realm = null;
+        try {
+            realm = Realm.getDefaultInstance();
+            String sortPref = PreferencesUtils.getPreferredSort(context);
+            RealmResults<Bookmark> favorites = BookmarkSort.fromPreference(context, sortPref)
+                    .findAll(realm.where(Bookmark.class).equalTo(Bookmark.FIELD_FAVORITE, true));
+            long fingerprint = computeFingerprint(sortPref, favorites);
+            if (!force && snapshotFile.exists() &&
+                    fingerprint == PreferencesUtils.getFavoritesFingerprint(context)) {
+                return false;
+            }
+            FavoritesSnapshot.write(snapshotFile, favorites);
+            PreferencesUtils.setFavoritesFingerprint(context, fingerprint);
+            return true;
+        } catch (Exception e) {
+            Timber.e(e, "There was an error writing favorites snapshot.");
+            // force a new snapshot next time
+            snapshotFile.delete();
+            return true;
+        } finally {
+            if (realm != null) realm.close();
+        }
+    }
+
+    /**
+     * @param sortPref
+     * @param favorites
+     * @return order dependent hash of favorite bookmarks as they are shown in widgets.
+     */
+    private static long computeFingerprint(String sortPref, List<Bookmark> favorites) {
+        long fingerprint = IdHashSet.hash(sortPref);
+        for (Bookmark bookmark : favorites) {
+            fingerprint = combine(fingerprint, bookmark.getId());
+            fingerprint = combine(fingerprint, bookmark.getTitle());
+            fingerprint = combine(fingerprint, bookmark.getUrl());
+        }
+        return fingerprint;
+    }
+
+    private static long combine(long fingerprint, String value) {
+        return (fingerprint ^ (value == null ? 0 : IdHashSet.hash(value))) * FNV_PRIME;
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FavoritesHeapTest {
+
+    private SmartFavorites.FavoritesHeap mHeap;
+
+    @Before
+    public void setUp() {
+        mHeap = new SmartFavorites.FavoritesHeap();
+    }
+
+    @Test
+    public void popReturnsLowestScoreFirst() {
+        mHeap.push("a", 3);
+        mHeap.push("b", 1);
+        mHeap.push("c", 2);
+        assertEquals(1, mHeap.peekScore(), 0);
+        assertEquals("b", mHeap.pop());
+        assertEquals("c", mHeap.pop());
+        assertEquals("a", mHeap.pop());
+        assertEquals(0, mHeap.size());
+    }
+
+    @Test
+    public void updateMovesEntryInBothDirections() {
+        mHeap.push("a", 1);
+        mHeap.push("b", 2);
+        mHeap.push("c", 3);
+        // least used favorite is clicked and it is not the top anymore
+        mHeap.update("a", 10);
+        assertEquals(2, mHeap.peekScore(), 0);
+        mHeap.update("c", 0.5);
+        assertEquals("c", mHeap.pop());
+        assertEquals("b", mHeap.pop());
+        assertEquals("a", mHeap.pop());
+    }
+
+    @Test
+    public void updateOfUnknownIdPushesIt() {
+        mHeap.push("a", 1);
+        mHeap.update("b", 0.5);
+        assertTrue(mHeap.contains("b"));
+        assertEquals("b", mHeap.pop());
+    }
+
+    @Test
+    public void boundedHeapKeepsTopScores() {
+        // same eviction policy as recompute and onClick
+        int count = 5;
+        Random random = new Random(42);
+        Map<String, Double> scores = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            String id = "bm" + i;
+            double score = random.nextDouble();
+            scores.put(id, score);
+            if (mHeap.size() < count) {
+                mHeap.push(id, score);
+            } else if (score > mHeap.peekScore()) {
+                String evicted = mHeap.pop();
+                assertFalse(mHeap.contains(evicted));
+                mHeap.push(id, score);
+            }
+        }
+        List<Double> expected = new ArrayList<>(scores.values());
+        Collections.sort(expected, Collections.<Double>reverseOrder());
+        expected = expected.subList(0, count);
+        List<Double> actual = new ArrayList<>();
+        for (String id : mHeap.getIds()) {
+            actual.add(scores.get(id));
+        }
+        Collections.sort(actual, Collections.<Double>reverseOrder());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void randomUpdatesKeepHeapOrder() {
+        Random random = new Random(7);
+        Map<String, Double> scores = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            scores.put("bm" + i, random.nextDouble());
+            mHeap.push("bm" + i, scores.get("bm" + i));
+        }
+        for (int i = 0; i < 500; i++) {
+            String id = "bm" + random.nextInt(50);
+            double score = random.nextDouble();
+            scores.put(id, score);
+            mHeap.update(id, score);
+            assertEquals(Collections.min(scores.values()), mHeap.peekScore(), 0);
+        }
+        double previous = Double.NEGATIVE_INFINITY;
+        while (mHeap.size() > 0) {
+            double score = mHeap.peekScore();
+            String id = mHeap.pop();
+            assertEquals(scores.get(id), score, 0);
+            assertTrue(score >= previous);
+            previous = score;
+        }
+    }
+
+    @Test
+    public void getIdsReturnsAllEntries() {
+        mHeap.push("a", 1);
+        mHeap.push("b", 2);
+        List<String> ids = mHeap.getIds();
+        Collections.sort(ids);
+        assertEquals(Arrays.asList("a", "b"), ids);
+    }
+}
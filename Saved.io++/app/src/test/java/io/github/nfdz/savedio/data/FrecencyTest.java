@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrecencyTest {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long NOW = 1500000000000L;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void neverClickedHasNoScore() {
+        assertEquals(Frecency.NO_FRECENCY, Frecency.fromClicks(0, NOW), 0);
+        assertEquals(0, Frecency.getScore(Frecency.NO_FRECENCY, NOW), 0);
+    }
+
+    @Test
+    public void scoreIsHalvedEveryHalfLife() {
+        double key = Frecency.fromClicks(8, NOW);
+        assertEquals(8, Frecency.getScore(key, NOW), DELTA);
+        assertEquals(4, Frecency.getScore(key, NOW + 30 * DAY_MILLIS), DELTA);
+        assertEquals(2, Frecency.getScore(key, NOW + 60 * DAY_MILLIS), DELTA);
+    }
+
+    @Test
+    public void addClicksOnlyNeedsCurrentKey() {
+        // incremental updates are equivalent to counting all clicks at once
+        double key = Frecency.NO_FRECENCY;
+        for (int i = 0; i < 5; i++) {
+            key = Frecency.addClicks(key, 1, NOW);
+        }
+        assertEquals(Frecency.fromClicks(5, NOW), key, DELTA);
+    }
+
+    @Test
+    public void repeatedClicksConvergeToSteadyScore() {
+        // one click per day converges to the geometric sum 1 / (1 - decay per day)
+        double decay = Math.pow(0.5, 1 / 30.0);
+        double steady = 1 / (1 - decay);
+        double key = Frecency.NO_FRECENCY;
+        long time = NOW;
+        for (int day = 0; day < 1000; day++) {
+            time = NOW + day * DAY_MILLIS;
+            key = Frecency.addClicks(key, 1, time);
+        }
+        assertEquals(steady, Frecency.getScore(key, time), 1e-6);
+    }
+
+    @Test
+    public void recentClicksOutrankOldClicks() {
+        double old = Frecency.fromClicks(100, NOW);
+        double recent = Frecency.fromClicks(10, NOW + 120 * DAY_MILLIS);
+        // 100 clicks decayed four half-lives are less than 10 fresh clicks
+        assertTrue(recent > old);
+        long later = NOW + 200 * DAY_MILLIS;
+        assertTrue(Frecency.getScore(recent, later) > Frecency.getScore(old, later));
+    }
+
+    @Test
+    public void keyOrderDoesNotChangeWithTime() {
+        double a = Frecency.fromClicks(3, NOW);
+        double b = Frecency.fromClicks(5, NOW - 10 * DAY_MILLIS);
+        boolean aFirst = Frecency.getScore(a, NOW) > Frecency.getScore(b, NOW);
+        for (int days = 0; days < 365; days += 30) {
+            long time = NOW + days * DAY_MILLIS;
+            assertEquals(aFirst, Frecency.getScore(a, time) > Frecency.getScore(b, time));
+        }
+        assertEquals(aFirst, a > b);
+    }
+
+    @Test
+    public void mergeAddsScores() {
+        double a = Frecency.fromClicks(3, NOW);
+        double b = Frecency.fromClicks(4, NOW - 30 * DAY_MILLIS);
+        double merged = Frecency.merge(a, b);
+        assertEquals(5, Frecency.getScore(merged, NOW), DELTA);
+        assertEquals(a, Frecency.merge(a, Frecency.NO_FRECENCY), 0);
+        assertEquals(b, Frecency.merge(Frecency.NO_FRECENCY, b), 0);
+    }
+}
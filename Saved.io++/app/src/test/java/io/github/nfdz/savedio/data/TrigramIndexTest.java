@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrigramIndexTest {
+
+    private static final List<String> TEXTS = Arrays.asList(
+            "android developers",
+            "realm database",
+            "github trending",
+            "java concurrency in practice",
+            "kotlin",
+            "kitten videos",
+            "aaaaaa");
+
+    private static final String[] WORDS = { "android", "realm", "github", "kotlin", "java",
+            "recipes", "travel", "music", "videos", "news", "design", "database", "guide",
+            "tutorial", "review", "weather", "football", "photography", "science", "history" };
+    private static final String[] BENCHMARK_QUERIES = { "droid", "tutorial", "graphy",
+            "kotlin guide", "example.org/12", "zzz" };
+    private static final int BENCHMARK_TEXTS = 50000;
+    private static final int BENCHMARK_ROUNDS = 20;
+
+    private TrigramIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new TrigramIndex(TEXTS);
+    }
+
+    @Test
+    public void substringMatchesAnyPosition() {
+        assertArrayEquals(new int[] { 0 }, mIndex.findSubstring("droid dev"));
+        assertArrayEquals(new int[] { 1 }, mIndex.findSubstring("base"));
+        assertArrayEquals(new int[] { 2 }, mIndex.findSubstring("trending"));
+        assertArrayEquals(new int[] { 6 }, mIndex.findSubstring("aaaa"));
+    }
+
+    @Test
+    public void substringVerifiesCandidates() {
+        // all trigrams of the query are indexed in the same text but not contiguous
+        assertArrayEquals(new int[0], mIndex.findSubstring("develop android"));
+        assertArrayEquals(new int[0], mIndex.findSubstring("xyz"));
+    }
+
+    @Test
+    public void shortSubstringScansAllTexts() {
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 5 }, mIndex.findSubstring("t"));
+        assertArrayEquals(new int[] { 3 }, mIndex.findSubstring("a "));
+    }
+
+    @Test
+    public void fuzzyToleratesTypos() {
+        int[] results = mIndex.findFuzzy("concurrensy", 10);
+        assertTrue(results.length > 0);
+        assertEquals(3, results[0]);
+        results = mIndex.findFuzzy("databse", 10);
+        assertTrue(results.length > 0);
+        assertEquals(1, results[0]);
+    }
+
+    @Test
+    public void fuzzyRequiresSharedTrigram() {
+        // one substitution in the middle breaks all trigrams of "itten", so texts are not verified
+        assertEquals(0, mIndex.findFuzzy("itxen", 10).length);
+        int[] results = mIndex.findFuzzy("kotin", 10);
+        assertTrue(results.length > 0);
+        assertEquals(4, results[0]);
+    }
+
+    @Test
+    public void fuzzyIgnoresShortQueries() {
+        assertEquals(0, mIndex.findFuzzy("kot", 10).length);
+        assertEquals(0, mIndex.findFuzzy("ko", 10).length);
+    }
+
+    @Test
+    public void fuzzyRanksExactMatchesFirst() {
+        int[] results = mIndex.findFuzzy("kitten", 10);
+        assertEquals(5, results[0]);
+        assertEquals(1, mIndex.findFuzzy("kitten", 1).length);
+    }
+
+    @Test
+    public void substringComparedToContainsScan() {
+        Random random = new Random(42);
+        List<String> texts = new ArrayList<>(BENCHMARK_TEXTS);
+        for (int i = 0; i < BENCHMARK_TEXTS; i++) {
+            texts.add(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] +
+                    "\nexample.org/" + i);
+        }
+        long start = System.nanoTime();
+        TrigramIndex index = new TrigramIndex(texts);
+        System.out.println(String.format("trigram index of %d texts built in %d ms",
+                BENCHMARK_TEXTS,
+                (System.nanoTime() - start) / 1000000));
+
+        for (String query : BENCHMARK_QUERIES) {
+            int[] expected = containsScan(texts, query);
+            assertArrayEquals(expected, index.findSubstring(query));
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+                containsScan(texts, query);
+            }
+            long scanned = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+                index.findSubstring(query);
+            }
+            long searched = System.nanoTime();
+            System.out.println(String.format("\"%s\" (%d matches): contains scan %d us, trigram index %d us",
+                    query,
+                    expected.length,
+                    (scanned - start) / 1000 / BENCHMARK_ROUNDS,
+                    (searched - scanned) / 1000 / BENCHMARK_ROUNDS));
+        }
+    }
+
+    @Test
+    public void substringDistance() {
+        assertEquals(0, TrigramIndex.substringDistance("base", "realm database"));
+        assertEquals(2, TrigramIndex.substringDistance("bsae", "realm database"));
+        assertEquals(1, TrigramIndex.substringDistance("kotin", "kotlin"));
+        assertEquals(3, TrigramIndex.substringDistance("xyz", "kotlin"));
+    }
+
+    private static int[] containsScan(List<String> texts, String query) {
+        int[] positions = new int[texts.size()];
+        int count = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            if (texts.get(i).contains(query)) positions[count++] = i;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+}
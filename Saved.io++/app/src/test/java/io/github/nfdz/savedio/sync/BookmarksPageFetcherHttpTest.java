@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.nfdz.savedio.sync.api.BookmarkAPI;
+import io.github.nfdz.savedio.sync.api.SavedioAPI;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fetches pages from a local HTTP server that mimics saved.io with an injected latency per
+ * request, and compares sequential and pipelined fetching.
+ */
+public class BookmarksPageFetcherHttpTest {
+
+    private static final int PAGE_LIMIT = BookmarksPageFetcher.PAGE_LIMIT;
+    private static final int PAGES = 20;
+    private static final long LATENCY_MILLIS = 50;
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private final AtomicInteger mRequested = new AtomicInteger();
+    private SavedioAPI mAPI;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServerExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mServerExecutor);
+        mServer.createContext("/bookmarks/", new PagesHandler());
+        mServer.start();
+        mAPI = new Retrofit.Builder()
+                .baseUrl("http://127.0.0.1:" + mServer.getAddress().getPort() + "/")
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(SavedioAPI.class);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void pipelinedFetchIsFasterThanSequential() throws SyncException {
+        long sequential = timeFetch(1);
+        long pipelined = timeFetch(BookmarksPageFetcher.DEFAULT_MAX_IN_FLIGHT);
+        System.out.println(String.format("%d pages with %d ms of latency: sequential %d ms, pipelined %d ms",
+                PAGES,
+                LATENCY_MILLIS,
+                sequential,
+                pipelined));
+        assertTrue(pipelined < sequential * 3 / 4);
+    }
+
+    @Test
+    public void outstandingRequestsStopAtRepeatedLastPage() throws SyncException {
+        int maxInFlight = 4;
+        timeFetch(maxInFlight);
+        // last page is full, so the repeated one is needed and at most a few more were in flight
+        assertTrue(mRequested.get() > PAGES);
+        assertTrue(mRequested.get() <= PAGES + maxInFlight);
+    }
+
+    private long timeFetch(int maxInFlight) throws SyncException {
+        mRequested.set(0);
+        final List<String> ids = new ArrayList<>();
+        BookmarksPageFetcher fetcher = new BookmarksPageFetcher(null, mAPI, "devKey", "userKey", maxInFlight);
+        long start = System.nanoTime();
+        int retrieved = fetcher.fetchAll(new BookmarksPageFetcher.PageConsumer() {
+            @Override
+            public boolean onPage(int page, List<BookmarkAPI> bookmarks) {
+                for (BookmarkAPI bm : bookmarks) {
+                    ids.add(bm.id);
+                }
+                return true;
+            }
+        });
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertEquals(PAGES * PAGE_LIMIT, retrieved);
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals("bm" + i, ids.get(i));
+        }
+        return elapsed;
+    }
+
+    /**
+     * Like saved.io, it repeats the last page when asked for pages beyond it.
+     */
+    private class PagesHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            mRequested.incrementAndGet();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            int page = Math.min(PAGES, Integer.parseInt(query.get("page")));
+            int limit = Integer.parseInt(query.get("limit"));
+            StringBuilder json = new StringBuilder("[");
+            for (int i = (page - 1) * limit; i < page * limit; i++) {
+                if (json.length() > 1) json.append(',');
+                json.append("{\"bk_id\":\"bm").append(i)
+                        .append("\",\"bk_url\":\"http://example.com/").append(i)
+                        .append("\",\"bk_title\":\"Title ").append(i)
+                        .append("\",\"bk_date\":\"2017-03-01 10:00:00\"}");
+            }
+            json.append(']');
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                // server is stopping
+            }
+            byte[] body = json.toString().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) return params;
+        for (String param : query.split("&")) {
+            int separator = param.indexOf('=');
+            if (separator > 0) params.put(param.substring(0, separator), param.substring(separator + 1));
+        }
+        return params;
+    }
+}
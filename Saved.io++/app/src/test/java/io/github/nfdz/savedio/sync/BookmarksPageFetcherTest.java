@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.nfdz.savedio.sync.api.BookmarkAPI;
+import io.github.nfdz.savedio.sync.api.CreateBookmarkResponse;
+import io.github.nfdz.savedio.sync.api.SavedioAPI;
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BookmarksPageFetcherTest {
+
+    private static final int PAGE_LIMIT = BookmarksPageFetcher.PAGE_LIMIT;
+
+    @Test
+    public void retrievesAllPagesInOrder() throws SyncException {
+        FakeServer server = new FakeServer(PAGE_LIMIT * 2 + 20);
+        RecordingConsumer consumer = new RecordingConsumer(Integer.MAX_VALUE);
+        int retrieved = newFetcher(server, 3).fetchAll(consumer);
+
+        assertEquals(server.mIds.size(), retrieved);
+        assertEquals(Arrays.asList(1, 2, 3), consumer.mPages);
+        assertEquals(server.mIds, consumer.mIds);
+    }
+
+    @Test
+    public void stopsAtRepeatedLastPage() throws SyncException {
+        // last page is full, so the end is only known when server repeats it
+        FakeServer server = new FakeServer(PAGE_LIMIT * 2);
+        RecordingConsumer consumer = new RecordingConsumer(Integer.MAX_VALUE);
+        int retrieved = newFetcher(server, 3).fetchAll(consumer);
+
+        assertEquals(server.mIds.size(), retrieved);
+        assertEquals(Arrays.asList(1, 2), consumer.mPages);
+        assertEquals(server.mIds, consumer.mIds);
+    }
+
+    @Test
+    public void emptyServerDeliversNothing() throws SyncException {
+        FakeServer server = new FakeServer(0);
+        RecordingConsumer consumer = new RecordingConsumer(Integer.MAX_VALUE);
+
+        assertEquals(0, newFetcher(server, 3).fetchAll(consumer));
+        assertTrue(consumer.mPages.isEmpty());
+    }
+
+    @Test
+    public void consumerCanStopFetching() throws SyncException {
+        FakeServer server = new FakeServer(PAGE_LIMIT * 10);
+        RecordingConsumer consumer = new RecordingConsumer(2);
+        int retrieved = newFetcher(server, 3).fetchAll(consumer);
+
+        assertEquals(PAGE_LIMIT * 2, retrieved);
+        assertEquals(Arrays.asList(1, 2), consumer.mPages);
+        // outstanding requests are cancelled and no more pages are requested
+        assertTrue(server.mRequested.get() <= 2 + 3);
+        assertEquals(server.mRequested.get() - 2, server.mCancelled.get());
+    }
+
+    @Test
+    public void boundsRequestsInFlight() throws SyncException {
+        FakeServer server = new FakeServer(PAGE_LIMIT * 12);
+        server.mDelayMillis = 20;
+        RecordingConsumer consumer = new RecordingConsumer(Integer.MAX_VALUE);
+        int retrieved = newFetcher(server, 2).fetchAll(consumer);
+
+        assertEquals(server.mIds.size(), retrieved);
+        assertTrue(server.mMaxInFlight.get() <= 2);
+        assertTrue(server.mMaxInFlight.get() > 1);
+    }
+
+    @Test
+    public void deliversInOrderWhenPagesArriveOutOfOrder() throws SyncException {
+        FakeServer server = new FakeServer(PAGE_LIMIT * 3 + 1);
+        server.mFirstPageDelayMillis = 100;
+        RecordingConsumer consumer = new RecordingConsumer(Integer.MAX_VALUE);
+        newFetcher(server, 4).fetchAll(consumer);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), consumer.mPages);
+        assertEquals(server.mIds, consumer.mIds);
+    }
+
+    private static BookmarksPageFetcher newFetcher(FakeServer server, int maxInFlight) {
+        // context is only used to report errors
+        return new BookmarksPageFetcher(null, server, "devKey", "userKey", maxInFlight);
+    }
+
+    private static class RecordingConsumer implements BookmarksPageFetcher.PageConsumer {
+
+        private final int mMaxPages;
+        private final List<Integer> mPages = new ArrayList<>();
+        private final List<String> mIds = new ArrayList<>();
+
+        RecordingConsumer(int maxPages) {
+            mMaxPages = maxPages;
+        }
+
+        @Override
+        public boolean onPage(int page, List<BookmarkAPI> bookmarks) {
+            mPages.add(page);
+            for (BookmarkAPI bm : bookmarks) {
+                mIds.add(bm.id);
+            }
+            return mPages.size() < mMaxPages;
+        }
+    }
+
+    /**
+     * Fake saved.io server. Like the real one, it repeats the last page when asked for pages
+     * beyond it.
+     */
+    private static class FakeServer implements SavedioAPI {
+
+        private final List<String> mIds = new ArrayList<>();
+        private final AtomicInteger mRequested = new AtomicInteger();
+        private final AtomicInteger mCancelled = new AtomicInteger();
+        private final AtomicInteger mInFlight = new AtomicInteger();
+        private final AtomicInteger mMaxInFlight = new AtomicInteger();
+        private volatile long mDelayMillis;
+        private volatile long mFirstPageDelayMillis;
+
+        FakeServer(int bookmarks) {
+            for (int i = 0; i < bookmarks; i++) {
+                mIds.add("bm" + i);
+            }
+        }
+
+        List<BookmarkAPI> getPage(int page, int limit) {
+            if (mIds.isEmpty()) return Collections.emptyList();
+            int lastPage = (mIds.size() + limit - 1) / limit;
+            int from = (Math.min(page, lastPage) - 1) * limit;
+            List<BookmarkAPI> bookmarks = new ArrayList<>();
+            for (String id : mIds.subList(from, Math.min(mIds.size(), from + limit))) {
+                BookmarkAPI bm = new BookmarkAPI();
+                bm.id = id;
+                bm.url = "http://example.com/" + id;
+                bookmarks.add(bm);
+            }
+            return bookmarks;
+        }
+
+        @Override
+        public Call<List<BookmarkAPI>> retrieveAllBookmarks(String devKey,
+                                                            String userKey,
+                                                            Integer page,
+                                                            Integer limit,
+                                                            String list) {
+            mRequested.incrementAndGet();
+            return new PageCall(this, page, limit);
+        }
+
+        @Override
+        public Call<BookmarkAPI> retrieveSingleBookmark(String bookmarkId, String devKey, String userKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Call<CreateBookmarkResponse> createBookmark(String devKey,
+                                                           String userKey,
+                                                           String url,
+                                                           String title,
+                                                           String list) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Call<Void> deleteBookmark(String devKey, String userKey, String bookmarkId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class PageCall implements Call<List<BookmarkAPI>> {
+
+        private final FakeServer mServer;
+        private final int mPage;
+        private final int mLimit;
+        private volatile boolean mExecuted;
+        private volatile boolean mCanceled;
+
+        PageCall(FakeServer server, int page, int limit) {
+            mServer = server;
+            mPage = page;
+            mLimit = limit;
+        }
+
+        @Override
+        public Response<List<BookmarkAPI>> execute() throws IOException {
+            mExecuted = true;
+            int inFlight = mServer.mInFlight.incrementAndGet();
+            try {
+                int max;
+                while (inFlight > (max = mServer.mMaxInFlight.get()) &&
+                        !mServer.mMaxInFlight.compareAndSet(max, inFlight)) {
+                    // retry
+                }
+                long delay = mPage == 1 ? mServer.mFirstPageDelayMillis : mServer.mDelayMillis;
+                if (delay > 0) Thread.sleep(delay);
+                if (mCanceled) throw new IOException("Canceled");
+                return Response.success(mServer.getPage(mPage, mLimit));
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted", e);
+            } finally {
+                mServer.mInFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void enqueue(Callback<List<BookmarkAPI>> callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public void cancel() {
+            if (!mCanceled) {
+                mCanceled = true;
+                mServer.mCancelled.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @Override
+        public Call<List<BookmarkAPI>> clone() {
+            return new PageCall(mServer, mPage, mLimit);
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://example.com/bookmarks/?page=" + mPage).build();
+        }
+    }
+}
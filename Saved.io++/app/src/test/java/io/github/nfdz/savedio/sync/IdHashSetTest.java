@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdHashSetTest {
+
+    @Test
+    public void addIgnoresRepeatedIds() {
+        IdHashSet set = new IdHashSet();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add("a"));
+        assertTrue(set.add("b"));
+        assertFalse(set.add("a"));
+        assertEquals(2, set.size());
+        assertTrue(set.contains("a"));
+        assertTrue(set.contains("b"));
+        assertFalse(set.contains("c"));
+    }
+
+    @Test
+    public void growKeepsAllIds() {
+        // starts with the minimum capacity and grows several times
+        IdHashSet set = new IdHashSet(1);
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            String id = UUID.randomUUID().toString();
+            expected.add(id);
+            set.add(id);
+        }
+        assertEquals(expected.size(), set.size());
+        for (String id : expected) {
+            assertTrue(set.contains(id));
+        }
+    }
+
+    @Test
+    public void containsOnlyAddedIds() {
+        Random random = new Random(42);
+        IdHashSet set = new IdHashSet();
+        Set<String> added = new HashSet<>();
+        for (int i = 0; i < 2000; i++) {
+            String id = Integer.toHexString(random.nextInt(4000));
+            assertEquals(added.add(id), set.add(id));
+        }
+        for (int i = 0; i < 4000; i++) {
+            String id = Integer.toHexString(i);
+            assertEquals(added.contains(id), set.contains(id));
+        }
+    }
+
+    @Test
+    public void clearRemovesAllIds() {
+        IdHashSet set = new IdHashSet();
+        set.add("a");
+        set.add("");
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains("a"));
+        assertFalse(set.contains(""));
+        assertTrue(set.add("a"));
+    }
+
+    @Test
+    public void hashIsStable() {
+        // FNV-1a reference values, checksums of stored sync results depend on them
+        assertEquals(0xcbf29ce484222325L, IdHashSet.hash(""));
+        assertEquals(0xaf63dc4c8601ec8cL, IdHashSet.hash("a"));
+        assertEquals(0x85944171f73967e8L, IdHashSet.hash("foobar"));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 Noe Fernandez
+ */
+package io.github.nfdz.savedio.sync.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares a new HTTP client per call (as APIHelper was used before) with a shared client that
+ * keeps connections alive, against a local TLS server.
+ */
+public class SharedClientTlsTest {
+
+    private static final String KEYSTORE = "/localhost.jks";
+    private static final char[] KEYSTORE_PASSWORD = "password".toCharArray();
+    private static final int CALLS = 30;
+
+    private HttpsServer mServer;
+    private ExecutorService mServerExecutor;
+    private X509TrustManager mTrustManager;
+    private String mUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream in = getClass().getResourceAsStream(KEYSTORE);
+        try {
+            keyStore.load(in, KEYSTORE_PASSWORD);
+        } finally {
+            in.close();
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, KEYSTORE_PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        // client only trusts the self-signed certificate of the server
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        mTrustManager = (X509TrustManager) tmf.getTrustManagers()[0];
+
+        mServer = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        mServerExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mServerExecutor);
+        mServer.createContext("/bookmarks/", new BookmarkHandler());
+        mServer.start();
+        mUrl = "https://127.0.0.1:" + mServer.getAddress().getPort() + "/bookmarks/";
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void sharedClientReusesConnection() throws IOException {
+        // first round warms up both code paths
+        timeNewClientPerCall();
+        timeSharedClient();
+
+        long perCall = timeNewClientPerCall();
+        OkHttpClient shared = newClient();
+        long sharedTime = timeCalls(shared);
+        System.out.println(String.format("%d TLS calls: new client per call %d ms, shared client %d ms",
+                CALLS,
+                perCall,
+                sharedTime));
+        // every call reused the same kept alive connection
+        assertEquals(1, shared.connectionPool().connectionCount());
+        assertTrue(sharedTime < perCall);
+    }
+
+    private long timeNewClientPerCall() throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            OkHttpClient client = newClient();
+            call(client);
+            client.connectionPool().evictAll();
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private long timeSharedClient() throws IOException {
+        return timeCalls(newClient());
+    }
+
+    private long timeCalls(OkHttpClient client) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            call(client);
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private void call(OkHttpClient client) throws IOException {
+        Response response = client.newCall(new Request.Builder().url(mUrl).build()).execute();
+        try {
+            assertTrue(response.isSuccessful());
+            response.body().string();
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Client with the same configuration as APIHelper, but trusting the local server. A new SSL
+     * socket factory per client means a new TLS session cache, like a new APIHelper had.
+     */
+    private OkHttpClient newClient() {
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                .retryOnConnectionFailure(true)
+                .sslSocketFactory(newClientContext().getSocketFactory(), mTrustManager)
+                .build();
+    }
+
+    private SSLContext newClientContext() {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] { mTrustManager }, null);
+            return context;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class BookmarkHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = "{\"bk_id\":\"1\",\"bk_url\":\"http://example.com\"}".getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}